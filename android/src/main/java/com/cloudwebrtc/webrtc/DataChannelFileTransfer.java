@@ -0,0 +1,255 @@
+package com.cloudwebrtc.webrtc;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.webrtc.DataChannel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.flutter.plugin.common.MethodChannel.Result;
+
+/**
+ * Moves a file across a DataChannel natively, so file bytes never cross the
+ * platform channel. The sender reads fixed-size chunks into one reusable
+ * buffer and waits for the channel to drain below its high-water mark before
+ * each chunk, keeping memory flat regardless of file size. The receiver
+ * appends the file chunks to the target file until the expected size has
+ * been written, failing rather than buffering when the disk falls behind.
+ *
+ * <p>Each chunk is a binary message starting with a {@link #HEADER_SIZE} byte
+ * header, {@code [u32 CHUNK_MAGIC][u32 sequence]}. The receiver only consumes
+ * messages carrying that header, so other messages on the channel are still
+ * delivered to the app during a transfer.
+ */
+abstract class DataChannelFileTransfer {
+    private final static String TAG = FlutterWebRTCPlugin.TAG;
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 100;
+    static final int CHUNK_MAGIC = 0x46574643; // "FWFC"
+    static final int HEADER_SIZE = 8;
+
+    /** Runs senders; each blocks on channel capacity for the whole transfer. */
+    private static final ExecutorService senders =
+            Executors.newCachedThreadPool(r -> new Thread(r, "DataChannelFileSender"));
+
+    protected final DataChannelObserver observer;
+    protected final File file;
+    protected final Result result;
+    protected volatile boolean cancelled = false;
+    private long lastProgressTime = 0;
+
+    DataChannelFileTransfer(DataChannelObserver observer, File file, Result result) {
+        this.observer = observer;
+        this.file = file;
+        this.result = result;
+    }
+
+    abstract void start();
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    /** Whether a binary message is a file chunk, judged by its header. */
+    static boolean isChunk(ByteBuffer data) {
+        return data.remaining() >= HEADER_SIZE && data.getInt(data.position()) == CHUNK_MAGIC;
+    }
+
+    protected void reportProgress(String direction, long transferred, long total, boolean force) {
+        long now = SystemClock.elapsedRealtime();
+        if (force || now - lastProgressTime >= PROGRESS_INTERVAL_MS) {
+            lastProgressTime = now;
+            observer.sendFileTransferProgress(direction, transferred, total);
+        }
+    }
+
+    static final class Sender extends DataChannelFileTransfer implements Runnable {
+        private final int chunkSize;
+
+        Sender(DataChannelObserver observer, File file, int chunkSize, Result result) {
+            super(observer, file, result);
+            this.chunkSize = chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
+        }
+
+        @Override
+        void start() {
+            senders.execute(this);
+        }
+
+        @Override
+        public void run() {
+            try (FileChannel channel = new FileInputStream(file).getChannel()) {
+                final long total = channel.size();
+                final ByteBuffer chunk = ByteBuffer.allocateDirect(HEADER_SIZE + chunkSize);
+                int sequence = 0;
+                long sent = 0;
+                while (sent < total) {
+                    observer.awaitSendCapacity(chunkSize);
+                    if (cancelled || observer.getState() != DataChannel.State.OPEN) {
+                        result.error("dataChannelSendFile", "dataChannelSendFile(): transfer aborted", null);
+                        return;
+                    }
+                    chunk.clear();
+                    chunk.putInt(CHUNK_MAGIC).putInt(sequence++);
+                    int read = channel.read(chunk);
+                    if (read <= 0) {
+                        break;
+                    }
+                    chunk.flip();
+                    // DataChannel.send copies the payload, so the chunk can be reused.
+                    if (!observer.send(new DataChannel.Buffer(chunk, true))) {
+                        result.error("dataChannelSendFile", "dataChannelSendFile(): send failed", null);
+                        return;
+                    }
+                    sent += read;
+                    reportProgress("send", sent, total, sent == total);
+                }
+                result.success(sent);
+            } catch (IOException | InterruptedException e) {
+                Log.e(TAG, "dataChannelSendFile() failed", e);
+                result.error("dataChannelSendFile", e.getMessage(), null);
+            } finally {
+                observer.onFileTransferFinished(this);
+            }
+        }
+    }
+
+    static final class Receiver extends DataChannelFileTransfer {
+        /**
+         * Received bytes not yet written to disk. The WebRTC thread cannot be
+         * blocked to push back on the sender, so a disk that falls this far
+         * behind fails the transfer instead of buffering the whole file.
+         */
+        static final long MAX_PENDING_BYTES = 16 * 1024 * 1024;
+
+        private final long expectedSize;
+        private final ExecutorService writer =
+                Executors.newSingleThreadExecutor(r -> new Thread(r, "DataChannelFileReceiver"));
+        private final AtomicLong pendingBytes = new AtomicLong();
+        private FileChannel channel;
+        private long received = 0;
+        /** Next expected chunk sequence number; only used on the WebRTC thread. */
+        private int sequence = 0;
+
+        Receiver(DataChannelObserver observer, File file, long expectedSize, Result result) {
+            super(observer, file, result);
+            this.expectedSize = expectedSize;
+        }
+
+        @Override
+        void start() {
+            writer.execute(() -> {
+                try {
+                    File parent = file.getParentFile();
+                    if (parent != null) {
+                        //noinspection ResultOfMethodCallIgnored
+                        parent.mkdirs();
+                    }
+                    channel = new FileOutputStream(file).getChannel();
+                    if (expectedSize <= 0) {
+                        finish();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "dataChannelReceiveToFile() failed", e);
+                    fail(e.getMessage());
+                }
+            });
+        }
+
+        @Override
+        void cancel() {
+            super.cancel();
+            post(() -> fail("transfer aborted"));
+        }
+
+        /**
+         * Called on the WebRTC thread with a message that passed {@link #isChunk}.
+         * The message buffer is only valid for the duration of the call, so the
+         * payload is copied before being handed to the writer.
+         */
+        void onMessage(ByteBuffer data) {
+            if (cancelled) {
+                return;
+            }
+            int chunkSequence = data.getInt(data.position() + 4);
+            if (chunkSequence != sequence) {
+                cancelled = true;
+                final String error = "expected chunk " + sequence + ", got " + chunkSequence;
+                post(() -> fail(error));
+                return;
+            }
+            sequence++;
+            data.position(data.position() + HEADER_SIZE);
+            final int size = data.remaining();
+            if (pendingBytes.addAndGet(size) > MAX_PENDING_BYTES) {
+                cancelled = true;
+                post(() -> fail("writing to disk fell more than " + MAX_PENDING_BYTES + " bytes behind"));
+                return;
+            }
+            final ByteBuffer copy = ByteBuffer.allocate(size);
+            copy.put(data);
+            copy.flip();
+            post(() -> write(copy));
+        }
+
+        private void post(Runnable task) {
+            try {
+                writer.execute(task);
+            } catch (RejectedExecutionException e) {
+                // The transfer has already finished.
+            }
+        }
+
+        private void write(ByteBuffer data) {
+            pendingBytes.addAndGet(-data.remaining());
+            if (cancelled || channel == null) {
+                return;
+            }
+            try {
+                while (data.hasRemaining()) {
+                    received += channel.write(data);
+                }
+                reportProgress("receive", received, expectedSize, received >= expectedSize);
+                if (received >= expectedSize) {
+                    finish();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "dataChannelReceiveToFile() failed", e);
+                fail(e.getMessage());
+            }
+        }
+
+        private void finish() throws IOException {
+            channel.close();
+            channel = null;
+            observer.onFileTransferFinished(this);
+            writer.shutdown();
+            result.success(received);
+        }
+
+        private void fail(String error) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+                channel = null;
+            } else if (writer.isShutdown()) {
+                return;
+            }
+            observer.onFileTransferFinished(this);
+            writer.shutdown();
+            result.error("dataChannelReceiveToFile", "dataChannelReceiveToFile(): " + error, null);
+        }
+    }
+}
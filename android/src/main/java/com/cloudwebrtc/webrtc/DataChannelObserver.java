@@ -1,30 +1,73 @@
 package com.cloudwebrtc.webrtc;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
 import com.cloudwebrtc.webrtc.utils.AnyThreadSink;
 import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
 
 import org.webrtc.DataChannel;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 
 import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.EventChannel;
 
 class DataChannelObserver implements DataChannel.Observer, EventChannel.StreamHandler {
 
+    private final static String TAG = FlutterWebRTCPlugin.TAG;
+
     private final int mId;
     private final DataChannel mDataChannel;
 
     private EventChannel eventChannel;
     private EventChannel.EventSink eventSink;
 
+    /**
+     * Messages flagged with this bit in the first byte of a frame sent on the
+     * message channel carry binary data, otherwise UTF-8 text.
+     */
+    static final byte FRAME_FLAG_BINARY = 0x01;
+
+    private final BinaryMessenger messenger;
+    private final String messageChannelName;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean messageChannelEnabled = false;
+
+    /**
+     * Sends are queued natively once the SCTP buffer holds more than
+     * {@code highWaterMark} bytes, well below the 16 MiB at which libwebrtc
+     * closes the channel. The queue drains as the buffer empties, and
+     * "dataChannelBufferedAmountLow" fires when the total amount falls to
+     * {@code bufferedAmountLowThreshold}.
+     */
+    static final long DEFAULT_HIGH_WATER_MARK = 8 * 1024 * 1024;
+    private final ArrayDeque<DataChannel.Buffer> sendQueue = new ArrayDeque<>();
+    private long queuedBytes = 0;
+    private volatile long highWaterMark = DEFAULT_HIGH_WATER_MARK;
+    private volatile long bufferedAmountLowThreshold = 0;
+    private boolean draining = false;
+    // Set when a drain was asked for while another thread was draining, which
+    // then re-checks the buffer instead of waiting for another callback.
+    private boolean drainRequested = false;
+    private final Object sendCapacityLock = new Object();
+
+    private DataChannelFileTransfer.Sender fileSender;
+    private volatile DataChannelFileTransfer.Receiver fileReceiver;
+
     DataChannelObserver(BinaryMessenger messenger, String peerConnectionId, int id,
                         DataChannel dataChannel) {
         mId = id;
         mDataChannel = dataChannel;
+        this.messenger = messenger;
+        messageChannelName = "FlutterWebRTC/dataChannelMessage" + peerConnectionId + id;
         eventChannel =
                 new EventChannel(messenger, "FlutterWebRTC/dataChannelEvent" + peerConnectionId + id);
-        eventChannel.setStreamHandler(this);
+        // Created on WebRTC threads too, but handlers may only be set on the platform thread.
+        mainHandler.post(() -> eventChannel.setStreamHandler(this));
     }
 
     private String dataChannelStateString(DataChannel.State dataChannelState) {
@@ -41,6 +84,188 @@ class DataChannelObserver implements DataChannel.Observer, EventChannel.StreamHa
         return "";
     }
 
+    /**
+     * When enabled, incoming messages bypass the event channel and are posted
+     * as raw frames ({@code [flags][payload]}) on a dedicated binary messenger
+     * channel, avoiding the intermediate byte[] and codec map per message.
+     */
+    void setMessageChannelEnabled(boolean enabled) {
+        messageChannelEnabled = enabled;
+    }
+
+    void setBufferedAmountThresholds(long highWaterMark, long lowThreshold) {
+        this.highWaterMark = highWaterMark;
+        this.bufferedAmountLowThreshold = lowThreshold;
+        drainSendQueue();
+    }
+
+    /**
+     * Sends the buffer right away if the channel has room, otherwise queues a
+     * copy of it, as the caller's buffer may not outlive this call.
+     */
+    boolean send(DataChannel.Buffer buffer) {
+        boolean sent = false;
+        boolean result = true;
+        synchronized (sendQueue) {
+            if (!sendQueue.isEmpty() || draining) {
+                enqueue(buffer);
+                drainRequested = true;
+                return true;
+            }
+            draining = true;
+        }
+        // DataChannel calls block on the signaling thread, so they are never
+        // made while holding the queue lock.
+        try {
+            if (hasRoomFor(buffer.data.remaining())) {
+                result = mDataChannel.send(buffer);
+                sent = true;
+            }
+        } finally {
+            synchronized (sendQueue) {
+                if (!sent) {
+                    enqueue(buffer);
+                }
+                draining = false;
+            }
+        }
+        drainSendQueue();
+        return result;
+    }
+
+    /** A message larger than the high-water mark still goes out once the buffer is empty. */
+    private boolean hasRoomFor(int size) {
+        long buffered = mDataChannel.bufferedAmount();
+        return buffered == 0 || buffered + size <= highWaterMark;
+    }
+
+    private void enqueue(DataChannel.Buffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.data.remaining());
+        copy.put(buffer.data);
+        copy.flip();
+        sendQueue.add(new DataChannel.Buffer(copy, buffer.binary));
+        queuedBytes += copy.remaining();
+    }
+
+    DataChannel.State getState() {
+        return mDataChannel.state();
+    }
+
+    /**
+     * Blocks the calling (non-WebRTC) thread until {@code size} more bytes fit
+     * under the high-water mark. Woken from onBufferedAmountChange, with a
+     * timeout so that a missed wake-up only delays the caller.
+     */
+    void awaitSendCapacity(int size) throws InterruptedException {
+        while (true) {
+            long buffered = bufferedAmount();
+            if (buffered == 0 || buffered + size <= highWaterMark
+                    || mDataChannel.state() != DataChannel.State.OPEN) {
+                return;
+            }
+            synchronized (sendCapacityLock) {
+                sendCapacityLock.wait(100);
+            }
+        }
+    }
+
+    synchronized boolean startFileTransfer(DataChannelFileTransfer transfer) {
+        if (transfer instanceof DataChannelFileTransfer.Sender) {
+            if (fileSender != null) {
+                return false;
+            }
+            fileSender = (DataChannelFileTransfer.Sender) transfer;
+        } else {
+            if (fileReceiver != null) {
+                return false;
+            }
+            fileReceiver = (DataChannelFileTransfer.Receiver) transfer;
+        }
+        transfer.start();
+        return true;
+    }
+
+    synchronized void onFileTransferFinished(DataChannelFileTransfer transfer) {
+        if (transfer == fileSender) {
+            fileSender = null;
+        } else if (transfer == fileReceiver) {
+            fileReceiver = null;
+        }
+    }
+
+    synchronized void cancelFileTransfers() {
+        if (fileSender != null) {
+            fileSender.cancel();
+        }
+        if (fileReceiver != null) {
+            fileReceiver.cancel();
+        }
+    }
+
+    void sendFileTransferProgress(String direction, long transferred, long total) {
+        ConstraintsMap params = new ConstraintsMap();
+        params.putString("event", "dataChannelFileTransferProgress");
+        params.putInt("id", mDataChannel.id());
+        params.putString("direction", direction);
+        params.putLong("transferred", transferred);
+        params.putLong("total", total);
+        sendEvent(params);
+    }
+
+    /** Bytes held by the SCTP transport plus bytes waiting in the native queue. */
+    long bufferedAmount() {
+        long buffered = mDataChannel.bufferedAmount();
+        synchronized (sendQueue) {
+            return buffered + queuedBytes;
+        }
+    }
+
+    private void drainSendQueue() {
+        while (true) {
+            DataChannel.Buffer next;
+            synchronized (sendQueue) {
+                // DataChannel.send can re-enter onBufferedAmountChange, and a
+                // callback can arrive on another thread while this one sends;
+                // either way the draining thread goes round again.
+                if (draining) {
+                    drainRequested = true;
+                    return;
+                }
+                if ((next = sendQueue.peek()) == null) {
+                    return;
+                }
+                draining = true;
+                drainRequested = false;
+            }
+            boolean sent = false;
+            boolean ok = true;
+            boolean retry;
+            try {
+                if (hasRoomFor(next.data.remaining())) {
+                    synchronized (sendQueue) {
+                        sendQueue.poll();
+                        queuedBytes -= next.data.remaining();
+                    }
+                    ok = mDataChannel.send(next);
+                    sent = true;
+                }
+            } finally {
+                synchronized (sendQueue) {
+                    draining = false;
+                    retry = drainRequested;
+                    if (!ok) {
+                        Log.w(TAG, "dataChannelSend() failed, dropping " + sendQueue.size() + " queued messages");
+                        sendQueue.clear();
+                        queuedBytes = 0;
+                    }
+                }
+            }
+            if (!ok || (!sent && !retry)) {
+                return;
+            }
+        }
+    }
+
     @Override
     public void onListen(Object o, EventChannel.EventSink sink) {
         eventSink = new AnyThreadSink(sink);
@@ -52,7 +277,24 @@ class DataChannelObserver implements DataChannel.Observer, EventChannel.StreamHa
     }
 
     @Override
-    public void onBufferedAmountChange(long amount) {
+    public void onBufferedAmountChange(long previousAmount) {
+        long previousQueued;
+        synchronized (sendQueue) {
+            previousQueued = queuedBytes;
+        }
+        drainSendQueue();
+        synchronized (sendCapacityLock) {
+            sendCapacityLock.notifyAll();
+        }
+        long currentTotal = bufferedAmount();
+        long lowThreshold = bufferedAmountLowThreshold;
+        if (previousAmount + previousQueued > lowThreshold && currentTotal <= lowThreshold) {
+            ConstraintsMap params = new ConstraintsMap();
+            params.putString("event", "dataChannelBufferedAmountLow");
+            params.putInt("id", mDataChannel.id());
+            params.putLong("bufferedAmount", currentTotal);
+            sendEvent(params);
+        }
     }
 
     @Override
@@ -62,13 +304,44 @@ class DataChannelObserver implements DataChannel.Observer, EventChannel.StreamHa
         params.putInt("id", mDataChannel.id());
         params.putString("state", dataChannelStateString(mDataChannel.state()));
         sendEvent(params);
+        if (mDataChannel.state() == DataChannel.State.CLOSED) {
+            cancelFileTransfers();
+        }
     }
 
     @Override
     public void onMessage(DataChannel.Buffer buffer) {
+        DataChannelFileTransfer.Receiver receiver = fileReceiver;
+        if (receiver != null && buffer.binary && DataChannelFileTransfer.isChunk(buffer.data)) {
+            receiver.onMessage(buffer.data);
+            return;
+        }
+        if (messageChannelEnabled) {
+            final ByteBuffer frame = messageFrame(buffer);
+            mainHandler.post(() -> messenger.send(messageChannelName, frame));
+            return;
+        }
+        sendEvent(messageEvent(mDataChannel.id(), buffer));
+    }
+
+    /**
+     * Builds the message channel frame for a message. The native buffer is
+     * only valid during onMessage, so it is copied once into a direct buffer
+     * the engine can read from. The messenger sends the bytes up to
+     * position(), so the frame is not flipped.
+     */
+    static ByteBuffer messageFrame(DataChannel.Buffer buffer) {
+        ByteBuffer frame = ByteBuffer.allocateDirect(1 + buffer.data.remaining());
+        frame.put(buffer.binary ? FRAME_FLAG_BINARY : 0);
+        frame.put(buffer.data);
+        return frame;
+    }
+
+    /** Builds the "dataChannelReceiveMessage" event used when the message channel is off. */
+    static ConstraintsMap messageEvent(int id, DataChannel.Buffer buffer) {
         ConstraintsMap params = new ConstraintsMap();
         params.putString("event", "dataChannelReceiveMessage");
-        params.putInt("id", mDataChannel.id());
+        params.putInt("id", id);
 
         byte[] bytes;
         if (buffer.data.hasArray()) {
@@ -85,8 +358,7 @@ class DataChannelObserver implements DataChannel.Observer, EventChannel.StreamHa
             params.putString("type", "text");
             params.putString("data", new String(bytes, Charset.forName("UTF-8")));
         }
-
-        sendEvent(params);
+        return params;
     }
 
     private void sendEvent(ConstraintsMap params) {
@@ -10,6 +10,7 @@ import androidx.lifecycle.DefaultLifecycleObserver;
 import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleOwner;
 import com.cloudwebrtc.webrtc.MethodCallHandlerImpl.AudioManager;
+import com.cloudwebrtc.webrtc.utils.IdAllocator;
 import com.cloudwebrtc.webrtc.utils.RTCAudioManager;
 import io.flutter.embedding.android.FlutterActivity;
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
@@ -29,15 +30,28 @@ import java.util.Set;
 public class FlutterWebRTCPlugin implements FlutterPlugin, ActivityAware {
 
     static public final String TAG = "FlutterWebRTCPlugin";
+    static private final String DATA_CHANNEL_SEND_CHANNEL = "FlutterWebRTC/dataChannelSend";
     private static Application application;
 
     private RTCAudioManager rtcAudioManager;
     private MethodChannel channel;
+    private BinaryMessenger messenger;
     private MethodCallHandlerImpl methodCallHandler;
     private LifeCycleObserver observer;
     private Lifecycle lifecycle;
+    private final IdAllocator.Scheme idScheme;
 
     public FlutterWebRTCPlugin() {
+        this(IdAllocator.Scheme.RANDOM_UUID);
+    }
+
+    /**
+     * Allocates stream, track and peer connection ids with {@code idScheme}.
+     * Apps that do not depend on UUID-shaped ids can register the plugin with
+     * {@link IdAllocator.Scheme#COUNTER}, which is cheaper per id.
+     */
+    public FlutterWebRTCPlugin(IdAllocator.Scheme idScheme) {
+        this.idScheme = idScheme;
     }
 
     /**
@@ -103,7 +117,7 @@ public class FlutterWebRTCPlugin implements FlutterPlugin, ActivityAware {
 
     private void startListening(final Context context, BinaryMessenger messenger,
                                 TextureRegistry textureRegistry) {
-        methodCallHandler = new MethodCallHandlerImpl(context, messenger, textureRegistry,
+        methodCallHandler = new MethodCallHandlerImpl(context, messenger, textureRegistry, idScheme,
                 new AudioManager() {
                     @Override
                     public void onAudioManagerRequested(boolean requested) {
@@ -137,12 +151,21 @@ public class FlutterWebRTCPlugin implements FlutterPlugin, ActivityAware {
 
         channel = new MethodChannel(messenger, "FlutterWebRTC.Method");
         channel.setMethodCallHandler(methodCallHandler);
+
+        this.messenger = messenger;
+        messenger.setMessageHandler(DATA_CHANNEL_SEND_CHANNEL, (message, reply) -> {
+            if (methodCallHandler != null) {
+                methodCallHandler.dataChannelSendFrame(message);
+            }
+            reply.reply(null);
+        });
     }
 
     private void stopListening() {
         methodCallHandler.dispose();
         methodCallHandler = null;
         channel.setMethodCallHandler(null);
+        messenger.setMessageHandler(DATA_CHANNEL_SEND_CHANNEL, null);
 
         if (rtcAudioManager != null) {
             Log.d(TAG, "Stopping the audio manager...");
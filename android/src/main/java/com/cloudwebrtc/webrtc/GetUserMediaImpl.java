@@ -39,6 +39,7 @@ import com.cloudwebrtc.webrtc.record.AudioChannel;
 import com.cloudwebrtc.webrtc.record.AudioSamplesInterceptor;
 import com.cloudwebrtc.webrtc.record.MediaRecorderImpl;
 import com.cloudwebrtc.webrtc.record.OutputAudioSamplesInterceptor;
+import com.cloudwebrtc.webrtc.record.RecorderOptions;
 import com.cloudwebrtc.webrtc.utils.Callback;
 import com.cloudwebrtc.webrtc.utils.ConstraintsArray;
 import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
@@ -73,6 +74,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodChannel.Result;
 
 /**
@@ -813,10 +815,12 @@ class GetUserMediaImpl {
      * @param path         to the file for record
      * @param videoTrack   to record or null if only audio needed
      * @param audioChannel channel for recording or null
+     * @param eventChannel receives segment and completion events, or null
      * @throws Exception lot of different exceptions, pass back to dart layer to print them at least
      */
     void startRecordingToFile(
-            String path, Integer id, @Nullable VideoTrack videoTrack, @Nullable AudioChannel audioChannel)
+            String path, Integer id, @Nullable VideoTrack videoTrack, @Nullable AudioChannel audioChannel,
+            RecorderOptions options, @Nullable EventChannel eventChannel)
             throws Exception {
         AudioSamplesInterceptor interceptor = null;
         if (audioChannel == AudioChannel.INPUT) {
@@ -827,11 +831,17 @@ class GetUserMediaImpl {
             }
             interceptor = outputSamplesInterceptor;
         }
-        MediaRecorderImpl mediaRecorder = new MediaRecorderImpl(id, videoTrack, interceptor);
+        MediaRecorderImpl mediaRecorder = new MediaRecorderImpl(id, videoTrack, interceptor, options, eventChannel);
         mediaRecorder.startRecording(new File(path));
         mediaRecorders.append(id, mediaRecorder);
     }
 
+    @Nullable
+    Map<String, Object> getRecorderStats(Integer id) {
+        MediaRecorderImpl mediaRecorder = mediaRecorders.get(id);
+        return mediaRecorder != null ? mediaRecorder.getStats() : null;
+    }
+
     void stopRecording(Integer id) {
         MediaRecorderImpl mediaRecorder = mediaRecorders.get(id);
         if (mediaRecorder != null) {
@@ -839,13 +849,16 @@ class GetUserMediaImpl {
             mediaRecorders.remove(id);
             File file = mediaRecorder.getRecordFile();
             if (file != null) {
+                String mimeType = mediaRecorder.getMimeType();
                 ContentValues values = new ContentValues(3);
-                values.put(MediaStore.Video.Media.TITLE, file.getName());
-                values.put(MediaStore.Video.Media.MIME_TYPE, "video/mp4");
-                values.put(MediaStore.Video.Media.DATA, file.getAbsolutePath());
+                values.put(MediaStore.MediaColumns.TITLE, file.getName());
+                values.put(MediaStore.MediaColumns.MIME_TYPE, mimeType);
+                values.put(MediaStore.MediaColumns.DATA, file.getAbsolutePath());
                 applicationContext
                         .getContentResolver()
-                        .insert(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, values);
+                        .insert(mimeType.startsWith("audio/")
+                                ? MediaStore.Audio.Media.EXTERNAL_CONTENT_URI
+                                : MediaStore.Video.Media.EXTERNAL_CONTENT_URI, values);
             }
         }
     }
@@ -0,0 +1,89 @@
+package com.cloudwebrtc.webrtc;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps remote track and stream ids to the PeerConnectionObservers that own
+ * them, so id lookups do not have to visit every peer connection. The same id
+ * can be owned by several peer connections (e.g. a stream forwarded through
+ * two of them), so each id keeps all of its owners; lookups return the most
+ * recent one.
+ */
+class MediaOwnerIndex {
+    private final Map<String, List<PeerConnectionObserver>> trackOwners = new HashMap<>();
+    private final Map<String, List<PeerConnectionObserver>> streamOwners = new HashMap<>();
+
+    synchronized void putTrack(String trackId, PeerConnectionObserver owner) {
+        put(trackOwners, trackId, owner);
+    }
+
+    synchronized void removeTrack(String trackId, PeerConnectionObserver owner) {
+        remove(trackOwners, trackId, owner);
+    }
+
+    synchronized void putStream(String streamId, PeerConnectionObserver owner) {
+        put(streamOwners, streamId, owner);
+    }
+
+    synchronized void removeStream(String streamId, PeerConnectionObserver owner) {
+        remove(streamOwners, streamId, owner);
+    }
+
+    /** Drops a closed peer connection from every id it owns. */
+    synchronized void removeOwner(PeerConnectionObserver owner) {
+        removeValues(trackOwners, owner);
+        removeValues(streamOwners, owner);
+    }
+
+    @Nullable
+    synchronized PeerConnectionObserver getTrackOwner(String trackId) {
+        return last(trackOwners.get(trackId));
+    }
+
+    @Nullable
+    synchronized PeerConnectionObserver getStreamOwner(String streamId) {
+        return last(streamOwners.get(streamId));
+    }
+
+    private static void put(Map<String, List<PeerConnectionObserver>> owners, String id,
+                            PeerConnectionObserver owner) {
+        List<PeerConnectionObserver> list = owners.get(id);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            owners.put(id, list);
+        }
+        // Re-adding moves the owner to the end, making it the one returned.
+        list.remove(owner);
+        list.add(owner);
+    }
+
+    private static void remove(Map<String, List<PeerConnectionObserver>> owners, String id,
+                               PeerConnectionObserver owner) {
+        List<PeerConnectionObserver> list = owners.get(id);
+        if (list != null && list.remove(owner) && list.isEmpty()) {
+            owners.remove(id);
+        }
+    }
+
+    private static void removeValues(Map<String, List<PeerConnectionObserver>> owners,
+                                     PeerConnectionObserver owner) {
+        Iterator<List<PeerConnectionObserver>> iterator = owners.values().iterator();
+        while (iterator.hasNext()) {
+            List<PeerConnectionObserver> list = iterator.next();
+            if (list.remove(owner) && list.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @Nullable
+    private static PeerConnectionObserver last(@Nullable List<PeerConnectionObserver> list) {
+        return list != null ? list.get(list.size() - 1) : null;
+    }
+}
@@ -5,6 +5,9 @@ import android.content.Context;
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.hardware.Camera.CameraInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.LongSparseArray;
 
@@ -12,18 +15,22 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.cloudwebrtc.webrtc.record.AudioChannel;
+import com.cloudwebrtc.webrtc.record.DirectBufferPool;
 import com.cloudwebrtc.webrtc.record.FrameCapturer;
+import com.cloudwebrtc.webrtc.record.FrameTap;
+import com.cloudwebrtc.webrtc.record.RecorderOptions;
 import com.cloudwebrtc.webrtc.utils.AnyThreadResult;
 import com.cloudwebrtc.webrtc.utils.ConstraintsArray;
 import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
 import com.cloudwebrtc.webrtc.utils.EglUtils;
+import com.cloudwebrtc.webrtc.utils.IdAllocator;
 import com.cloudwebrtc.webrtc.utils.ObjectType;
+import com.cloudwebrtc.webrtc.utils.StatsUtils;
 
 import org.webrtc.AudioTrack;
 import org.webrtc.CryptoOptions;
 import org.webrtc.DefaultVideoDecoderFactory;
 import org.webrtc.DefaultVideoEncoderFactory;
-import org.webrtc.DtmfSender;
 import org.webrtc.EglBase;
 import org.webrtc.IceCandidate;
 import org.webrtc.Logging;
@@ -46,7 +53,6 @@ import org.webrtc.PeerConnection.TcpCandidatePolicy;
 import org.webrtc.PeerConnectionFactory;
 import org.webrtc.PeerConnectionFactory.InitializationOptions;
 import org.webrtc.PeerConnectionFactory.Options;
-import org.webrtc.RtpSender;
 import org.webrtc.SdpObserver;
 import org.webrtc.SessionDescription;
 import org.webrtc.SessionDescription.Type;
@@ -57,12 +63,21 @@ import org.webrtc.audio.JavaAudioDeviceModule;
 import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.UUID;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.EventChannel;
@@ -88,15 +103,74 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
 
   static public final String TAG = "FlutterWebRTCPlugin";
 
-  private final Map<String, PeerConnectionObserver> mPeerConnectionObservers = new HashMap<>();
+  /**
+   * Methods that do not touch UI state (textures, renderers, camera, permissions)
+   * and are heavy enough to cause frame drops, plus every method that uses RTP
+   * sender/receiver/transceiver wrappers, since those wait on the observer's
+   * rtpCacheLock. They run on {@link #workerExecutor}, in call order, and reply
+   * through {@link AnyThreadResult}.
+   */
+  private static final Set<String> WORKER_METHODS = new HashSet<>(Arrays.asList(
+          "createPeerConnection",
+          "createOffer",
+          "createAnswer",
+          "setLocalDescription",
+          "setRemoteDescription",
+          "getLocalDescription",
+          "getRemoteDescription",
+          "setConfiguration",
+          "addCandidate",
+          "addCandidates",
+          "getStats",
+          "getStatsForAll",
+          "sendDtmf",
+          "addTrack",
+          "removeTrack",
+          "addTransceiver",
+          "rtpTransceiverSetDirection",
+          "rtpTransceiverGetCurrentDirection",
+          "rtpTransceiverStop",
+          "rtpSenderSetParameters",
+          "rtpSenderReplaceTrack",
+          "rtpSenderSetTrack",
+          "rtpSenderDispose",
+          "getSenders",
+          "getReceivers",
+          "getTransceivers",
+          "peerConnectionClose",
+          "peerConnectionDispose"
+  ));
+
+  private final ExecutorService workerExecutor =
+          Executors.newSingleThreadExecutor(r -> new Thread(r, "FlutterWebRTCWorker"));
+
+  /** Default time getStatsForAll waits for the slowest peer connection. */
+  private static final int STATS_FOR_ALL_TIMEOUT_MS = 5000;
+
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+  private final Map<String, PeerConnectionObserver> mPeerConnectionObservers = new ConcurrentHashMap<>();
+  private final DataChannelSender frameSender = this::dataChannelSend;
+  /** Only used on the platform thread, which delivers the send frames. */
+  private final FrameIdCache frameIds = new FrameIdCache();
   private BinaryMessenger messenger;
   private Context context;
   private final TextureRegistry textures;
 
   private PeerConnectionFactory mFactory;
 
-  private final Map<String, MediaStream> localStreams = new HashMap<>();
-  private final Map<String, MediaStreamTrack> localTracks = new HashMap<>();
+  private final Map<String, MediaStream> localStreams = new ConcurrentHashMap<>();
+  private final Map<String, MediaStreamTrack> localTracks = new ConcurrentHashMap<>();
+  private final MediaOwnerIndex mediaOwnerIndex = new MediaOwnerIndex();
+
+  /** Running frame taps by track id. */
+  private final Map<String, FrameTap> frameTaps = new HashMap<>();
+  /**
+   * Stream ids (also used for peer connections and transceivers without a
+   * mid) and track ids; under the counter scheme the two use distinct prefixes.
+   */
+  private final IdAllocator streamIdAllocator;
+  private final IdAllocator trackIdAllocator;
 
   private LongSparseArray<FlutterRTCVideoRenderer> renders = new LongSparseArray<>();
 
@@ -113,11 +187,15 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
   private Activity activity;
 
   MethodCallHandlerImpl(Context context, BinaryMessenger messenger, TextureRegistry textureRegistry,
-                        @NonNull AudioManager audioManager) {
+                        IdAllocator.Scheme idScheme, @NonNull AudioManager audioManager) {
     this.context = context;
     this.textures = textureRegistry;
     this.messenger = messenger;
     this.audioManager = audioManager;
+    this.streamIdAllocator = new IdAllocator(idScheme);
+    this.trackIdAllocator = new IdAllocator(idScheme);
+    // Drops pooled frame buffers on onTrimMemory.
+    context.registerComponentCallbacks(DirectBufferPool.getInstance());
   }
 
   static private void resultError(String method, String error, Result result) {
@@ -126,11 +204,32 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
     Log.d(TAG, errorMsg);
   }
 
+  /**
+   * Queues work behind the worker method calls. Returns false, without running
+   * the task, once the plugin is disposed; callers owing Dart a reply must then
+   * send it themselves.
+   */
+  private boolean runOnWorker(Runnable task) {
+    try {
+      workerExecutor.execute(task);
+      return true;
+    } catch (RejectedExecutionException e) {
+      Log.d(TAG, "runOnWorker() worker is shut down");
+      return false;
+    }
+  }
+
   void dispose() {
+    workerExecutor.shutdown();
     mPeerConnectionObservers.clear();
+    for (FrameTap tap : frameTaps.values()) {
+      tap.stop();
+    }
+    frameTaps.clear();
+    context.unregisterComponentCallbacks(DirectBufferPool.getInstance());
   }
 
-  private void ensureInitialized() {
+  private synchronized void ensureInitialized() {
     if (mFactory != null) {
       return;
     }
@@ -163,9 +262,26 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
 
   @Override
   public void onMethodCall(MethodCall call, @NonNull Result notSafeResult) {
+    final AnyThreadResult result = new AnyThreadResult(notSafeResult);
+    if (WORKER_METHODS.contains(call.method)) {
+      boolean queued = runOnWorker(() -> {
+        try {
+          handleMethodCall(call, result);
+        } catch (Exception e) {
+          resultError(call.method, e.getMessage(), result);
+        }
+      });
+      if (!queued) {
+        resultError(call.method, "plugin is disposed", result);
+      }
+    } else {
+      handleMethodCall(call, result);
+    }
+  }
+
+  private void handleMethodCall(MethodCall call, AnyThreadResult result) {
     ensureInitialized();
 
-    final AnyThreadResult result = new AnyThreadResult(notSafeResult);
     switch (call.method) {
       case "createPeerConnection": {
         Map<String, Object> constraints = call.argument("constraints");
@@ -265,19 +381,9 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
         String tone = call.argument("tone");
         int duration = call.argument("duration");
         int gap = call.argument("gap");
-        PeerConnection peerConnection = getPeerConnection(peerConnectionId);
-        if (peerConnection != null) {
-          RtpSender audioSender = null;
-          for (RtpSender sender : peerConnection.getSenders()) {
-
-            if (sender.track().kind().equals("audio")) {
-              audioSender = sender;
-            }
-          }
-          if (audioSender != null) {
-            DtmfSender dtmfSender = audioSender.dtmf();
-            dtmfSender.insertDtmf(tone, duration, gap);
-          }
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco != null && pco.getPeerConnection() != null) {
+          pco.insertDtmf(tone, duration, gap);
           result.success("success");
         } else {
           resultError("dtmf", "peerConnection is null", result);
@@ -290,10 +396,52 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
         peerConnectionAddICECandidate(new ConstraintsMap(candidate), peerConnectionId, result);
         break;
       }
+      case "addCandidates": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        List<Object> candidates = call.argument("candidates");
+        peerConnectionAddICECandidates(candidates, peerConnectionId, result);
+        break;
+      }
       case "getStats": {
         String peerConnectionId = call.argument("peerConnectionId");
-        String trackId = call.argument("trackId");
-        peerConnectionGetStats(trackId, peerConnectionId, result);
+        String trackId = call.hasArgument("trackId")
+            ? call.argument("trackId") : call.argument("track");
+        List<String> types = call.argument("types");
+        List<String> ids = call.argument("ids");
+        peerConnectionGetStats(trackId, types, ids, peerConnectionId, result);
+        break;
+      }
+      case "getStatsForAll": {
+        List<String> peerConnectionIds = call.argument("peerConnectionIds");
+        List<String> types = call.argument("types");
+        List<String> ids = call.argument("ids");
+        Integer timeoutMs = call.argument("timeoutMs");
+        peerConnectionGetStatsForAll(peerConnectionIds, types, ids,
+                timeoutMs != null ? timeoutMs : STATS_FOR_ALL_TIMEOUT_MS, result);
+        break;
+      }
+      case "startStatsSampler": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        Number intervalMs = call.argument("intervalMs");
+        List<String> fields = call.argument("fields");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("startStatsSampler", "peerConnection is null", result);
+        } else {
+          pco.startStatsSampler(intervalMs != null ? intervalMs.intValue() : 1000, fields);
+          result.success(null);
+        }
+        break;
+      }
+      case "stopStatsSampler": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null) {
+          resultError("stopStatsSampler", "peerConnection is null", result);
+        } else {
+          pco.stopStatsSampler();
+          result.success(null);
+        }
         break;
       }
       case "createDataChannel": {
@@ -304,24 +452,79 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
         break;
       }
       case "dataChannelSend": {
+        if (dataChannelSendCall(call, frameSender)) {
+          result.success(null);
+        } else {
+          resultError("dataChannelSend", "Could not encode text string as UTF-8.", result);
+        }
+        break;
+      }
+      case "dataChannelSetMessageChannel": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        int dataChannelId = call.argument("dataChannelId");
+        boolean enabled = call.argument("enabled");
+        dataChannelSetMessageChannel(peerConnectionId, dataChannelId, enabled);
+        result.success(null);
+        break;
+      }
+      case "dataChannelSetBufferedAmountThresholds": {
         String peerConnectionId = call.argument("peerConnectionId");
         int dataChannelId = call.argument("dataChannelId");
-        String type = call.argument("type");
-        Boolean isBinary = type.equals("binary");
-        ByteBuffer byteBuffer;
-        if (isBinary) {
-          byteBuffer = ByteBuffer.wrap(call.argument("data"));
+        Number highWaterMark = call.argument("highWaterMark");
+        Number lowThreshold = call.argument("bufferedAmountLowThreshold");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("dataChannelSetBufferedAmountThresholds", "peerConnection is null", result);
         } else {
-          try {
-            String data = call.argument("data");
-            byteBuffer = ByteBuffer.wrap(data.getBytes("UTF-8"));
-          } catch (UnsupportedEncodingException e) {
-            resultError("dataChannelSend", "Could not encode text string as UTF-8.", result);
-            return;
-          }
+          pco.dataChannelSetBufferedAmountThresholds(dataChannelId,
+                  highWaterMark != null ? highWaterMark.longValue() : DataChannelObserver.DEFAULT_HIGH_WATER_MARK,
+                  lowThreshold != null ? lowThreshold.longValue() : 0);
+          result.success(null);
+        }
+        break;
+      }
+      case "dataChannelSendFile": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        int dataChannelId = call.argument("dataChannelId");
+        String path = call.argument("path");
+        Integer chunkSize = call.argument("chunkSize");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("dataChannelSendFile", "peerConnection is null", result);
+        } else if (path == null) {
+          resultError("dataChannelSendFile", "path is required", result);
+        } else {
+          pco.dataChannelSendFile(dataChannelId, path,
+                  chunkSize != null ? chunkSize : DataChannelFileTransfer.DEFAULT_CHUNK_SIZE, result);
+        }
+        break;
+      }
+      case "dataChannelReceiveToFile": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        int dataChannelId = call.argument("dataChannelId");
+        String path = call.argument("path");
+        Number size = call.argument("size");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("dataChannelReceiveToFile", "peerConnection is null", result);
+        } else if (path == null || size == null) {
+          resultError("dataChannelReceiveToFile", "path and size are required", result);
+        } else {
+          pco.dataChannelReceiveToFile(dataChannelId, path, size.longValue(), result);
+        }
+        break;
+      }
+      case "dataChannelGetBufferedAmount": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        int dataChannelId = call.argument("dataChannelId");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("dataChannelGetBufferedAmount", "peerConnection is null", result);
+        } else {
+          ConstraintsMap params = new ConstraintsMap();
+          params.putLong("bufferedAmount", pco.dataChannelGetBufferedAmount(dataChannelId));
+          result.success(params.toMap());
         }
-        dataChannelSend(peerConnectionId, dataChannelId, byteBuffer, isBinary);
-        result.success(null);
         break;
       }
       case "dataChannelClose": {
@@ -371,6 +574,10 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
       case "trackDispose": {
         String trackId = call.argument("trackId");
         localTracks.remove(trackId);
+        FrameTap tap = frameTaps.remove(trackId);
+        if (tap != null) {
+          tap.stop();
+        }
         result.success(null);
         break;
       }
@@ -476,9 +683,10 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
         getDisplayMedia(constraintsMap, result);
         break;
       }
-      case "startRecordToFile":
+      case "startRecordToFile": {
         //This method can a lot of different exceptions
         //so we should notify plugin user about them
+        EventChannel eventChannel = null;
         try {
           String path = call.argument("path");
           VideoTrack videoTrack = null;
@@ -495,28 +703,45 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
             audioChannel = AudioChannel.values()[(Integer) call.argument("audioChannel")];
           }
           Integer recorderId = call.argument("recorderId");
+          Map<String, Object> options = call.argument("options");
           if (videoTrack != null || audioChannel != null) {
-            getUserMediaImpl.startRecordingToFile(path, recorderId, videoTrack, audioChannel);
+            eventChannel = new EventChannel(messenger, "FlutterWebRTC/mediaRecorderEvent" + recorderId);
+            getUserMediaImpl.startRecordingToFile(path, recorderId, videoTrack, audioChannel,
+                RecorderOptions.fromMap(options), eventChannel);
             result.success(null);
           } else {
             resultError("startRecordToFile", "No tracks", result);
           }
         } catch (Exception e) {
+          if (eventChannel != null) {
+            eventChannel.setStreamHandler(null);
+          }
           resultError("startRecordToFile", e.getMessage(), result);
         }
         break;
+      }
       case "stopRecordToFile":
         Integer recorderId = call.argument("recorderId");
         getUserMediaImpl.stopRecording(recorderId);
         result.success(null);
         break;
+      case "getRecorderStats": {
+        Map<String, Object> stats = getUserMediaImpl.getRecorderStats(call.argument("recorderId"));
+        if (stats != null) {
+          result.success(stats);
+        } else {
+          resultError("getRecorderStats", "Recorder not found", result);
+        }
+        break;
+      }
       case "captureFrame":
         String path = call.argument("path");
         String videoTrackId = call.argument("trackId");
+        Map<String, Object> captureOptions = call.argument("options");
         if (videoTrackId != null) {
           MediaStreamTrack track = getTrackForId(videoTrackId);
           if (track instanceof VideoTrack) {
-            new FrameCapturer((VideoTrack) track, new File(path), result);
+            new FrameCapturer((VideoTrack) track, path != null ? new File(path) : null, captureOptions, result);
           } else {
             resultError("captureFrame", "It's not video track", result);
           }
@@ -524,6 +749,30 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
           resultError("captureFrame", "Track is null", result);
         }
         break;
+      case "startFrameTap": {
+        String trackId = call.argument("trackId");
+        MediaStreamTrack track = trackId != null ? getTrackForId(trackId) : null;
+        if (!(track instanceof VideoTrack)) {
+          resultError("startFrameTap", "Video track not found for id: " + trackId, result);
+          break;
+        }
+        FrameTap previous = frameTaps.remove(trackId);
+        if (previous != null) {
+          previous.stop();
+        }
+        Map<String, Object> options = call.argument("options");
+        frameTaps.put(trackId, new FrameTap((VideoTrack) track, trackId, messenger, options));
+        result.success(null);
+        break;
+      }
+      case "stopFrameTap": {
+        FrameTap tap = frameTaps.remove(call.<String>argument("trackId"));
+        if (tap != null) {
+          tap.stop();
+        }
+        result.success(null);
+        break;
+      }
       case "getLocalDescription": {
         String peerConnectionId = call.argument("peerConnectionId");
         PeerConnection peerConnection = getPeerConnection(peerConnectionId);
@@ -942,7 +1191,12 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
   public String peerConnectionInit(ConstraintsMap configuration, ConstraintsMap constraints) {
     String peerConnectionId = getNextStreamUUID();
     RTCConfiguration conf = parseRTCConfiguration(configuration);
-    PeerConnectionObserver observer = new PeerConnectionObserver(conf, this, messenger, peerConnectionId);
+    PeerConnectionObserver observer = new PeerConnectionObserver(conf, this, mediaOwnerIndex, messenger, peerConnectionId,
+            this::runOnWorker);
+    if (constraints.hasKey("iceCandidateBatchWindowMs")
+            && constraints.getType("iceCandidateBatchWindowMs") == ObjectType.Number) {
+      observer.setIceCandidateBatchWindow(constraints.getInt("iceCandidateBatchWindowMs"));
+    }
     PeerConnection peerConnection
             = mFactory.createPeerConnection(
             conf,
@@ -968,24 +1222,12 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
 
   @Override
   public String getNextStreamUUID() {
-    String uuid;
-
-    do {
-      uuid = UUID.randomUUID().toString();
-    } while (getStreamForId(uuid, "") != null);
-
-    return uuid;
+    return streamIdAllocator.next();
   }
 
   @Override
   public String getNextTrackUUID() {
-    String uuid;
-
-    do {
-      uuid = UUID.randomUUID().toString();
-    } while (getTrackForId(uuid) != null);
-
-    return uuid;
+    return trackIdAllocator.next();
   }
 
   @Override
@@ -1001,20 +1243,11 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
 
   MediaStream getStreamForId(String id, String peerConnectionId) {
     MediaStream stream = null;
-    if (peerConnectionId.length() > 0) {
-      PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
-      if (pco != null) {
-        stream = pco.remoteStreams.get(id);
-      }
-    } else {
-      for (Entry<String, PeerConnectionObserver> entry : mPeerConnectionObservers
-              .entrySet()) {
-        PeerConnectionObserver pco = entry.getValue();
-        stream = pco.remoteStreams.get(id);
-        if (stream != null) {
-          break;
-        }
-      }
+    PeerConnectionObserver pco = peerConnectionId.length() > 0
+        ? mPeerConnectionObservers.get(peerConnectionId)
+        : mediaOwnerIndex.getStreamOwner(id);
+    if (pco != null) {
+      stream = pco.remoteStreams.get(id);
     }
     if (stream == null) {
       stream = localStreams.get(id);
@@ -1027,20 +1260,17 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
     MediaStreamTrack track = localTracks.get(trackId);
 
     if (track == null) {
-      for (Entry<String, PeerConnectionObserver> entry : mPeerConnectionObservers.entrySet()) {
-        PeerConnectionObserver pco = entry.getValue();
-        track = pco.remoteTracks.get(trackId);
-
+      PeerConnectionObserver owner = mediaOwnerIndex.getTrackOwner(trackId);
+      if (owner != null) {
+        track = owner.remoteTracks.get(trackId);
         if (track == null) {
-          track = pco.getTransceiversTrack(trackId);
-        }
-
-        if (track != null) {
-          break;
+          track = owner.getTransceiversTrack(trackId);
         }
       }
     }
 
+    // Every receiver track Dart can know of is indexed: announced through
+    // onAddTrack, or seen by addTransceiver or a receiver/transceiver fetch.
     return track;
   }
 
@@ -1402,7 +1632,11 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
 
         @Override
         public void onSetSuccess() {
-          result.success(null);
+          // Queued behind the onTrack events the observer sends from the
+          // worker, so Dart still sees them before the description is set.
+          if (!runOnWorker(() -> result.success(null))) {
+            result.success(null);
+          }
         }
 
         @Override
@@ -1436,15 +1670,118 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
     result.success(res);
   }
 
-  public void peerConnectionGetStats(String trackId, String id, final Result result) {
+  /**
+   * Applies a burst of remote candidates in one pass. The result holds one
+   * boolean per candidate, in the order they were passed in.
+   */
+  public void peerConnectionAddICECandidates(List<Object> candidates, final String id,
+                                             final Result result) {
+    PeerConnection peerConnection = getPeerConnection(id);
+    if (peerConnection == null) {
+      resultError("peerConnectionAddICECandidates", "peerConnection is null", result);
+      return;
+    }
+    ConstraintsArray results = new ConstraintsArray();
+    if (candidates != null) {
+      for (Object item : candidates) {
+        boolean res = false;
+        try {
+          ConstraintsMap candidateMap = new ConstraintsMap((Map<String, Object>) item);
+          IceCandidate candidate = new IceCandidate(
+                  candidateMap.getString("sdpMid"),
+                  candidateMap.getInt("sdpMLineIndex"),
+                  candidateMap.getString("candidate")
+          );
+          res = peerConnection.addIceCandidate(candidate);
+        } catch (Exception e) {
+          Log.d(TAG, "peerConnectionAddICECandidates(): invalid candidate " + item, e);
+        }
+        results.pushBoolean(res);
+      }
+    }
+    ConstraintsMap params = new ConstraintsMap();
+    params.putArray("results", results.toArrayList());
+    result.success(params.toMap());
+  }
+
+  public void peerConnectionGetStats(String trackId, @Nullable List<String> types,
+                                     @Nullable List<String> ids, String id, final Result result) {
     PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
     if (pco == null || pco.getPeerConnection() == null) {
       resultError("peerConnectionGetStats", "peerConnection is null", result);
     } else {
-      pco.getStats(trackId, result);
+      pco.getStats(trackId, types, ids, result);
     }
   }
 
+  /**
+   * Requests stats from every selected peer connection at once and answers
+   * with a single merged response once all of them have reported. Each entry
+   * carries its own latency so a slow peer is visible on its own.
+   */
+  public void peerConnectionGetStatsForAll(@Nullable List<String> peerConnectionIds,
+                                           @Nullable List<String> types,
+                                           @Nullable List<String> ids, int timeoutMs,
+                                           final Result result) {
+    final Collection<String> pcIds = peerConnectionIds != null
+        ? peerConnectionIds : new ArrayList<>(mPeerConnectionObservers.keySet());
+    final Set<String> typeSet = types != null ? new HashSet<>(types) : null;
+    final Set<String> idSet = ids != null ? new HashSet<>(ids) : null;
+    final Map<String, Object> peers = new ConcurrentHashMap<>();
+    final AtomicInteger pending = new AtomicInteger(pcIds.size() + 1);
+    final AtomicBoolean done = new AtomicBoolean();
+    final long startNs = SystemClock.elapsedRealtimeNanos();
+    // Replies once, with whatever arrived; peers still pending get an error
+    // entry. Stats arriving later are dropped.
+    final Runnable complete = new Runnable() {
+      @Override
+      public void run() {
+        if (!done.compareAndSet(false, true)) {
+          return;
+        }
+        mainHandler.removeCallbacks(this);
+        Map<String, Object> snapshot = new HashMap<>(peers);
+        for (String pcId : pcIds) {
+          if (!snapshot.containsKey(pcId)) {
+            ConstraintsMap entry = new ConstraintsMap();
+            entry.putString("error", "getStats timed out after " + timeoutMs + " ms");
+            snapshot.put(pcId, entry.toMap());
+          }
+        }
+        ConstraintsMap params = new ConstraintsMap();
+        params.putMap("peers", snapshot);
+        params.putDouble("latencyMs", (SystemClock.elapsedRealtimeNanos() - startNs) / 1e6);
+        result.success(params.toMap());
+      }
+    };
+    final Runnable onPeerDone = () -> {
+      if (pending.decrementAndGet() == 0) {
+        complete.run();
+      }
+    };
+    mainHandler.postDelayed(complete, timeoutMs);
+    for (final String pcId : pcIds) {
+      PeerConnectionObserver pco = mPeerConnectionObservers.get(pcId);
+      PeerConnection peerConnection = pco != null ? pco.getPeerConnection() : null;
+      if (peerConnection == null) {
+        ConstraintsMap entry = new ConstraintsMap();
+        entry.putString("error", "peerConnection is null");
+        peers.put(pcId, entry.toMap());
+        onPeerDone.run();
+        continue;
+      }
+      final long peerStartNs = SystemClock.elapsedRealtimeNanos();
+      peerConnection.getStats(report -> {
+        Map<String, Object> entry = StatsUtils.statsReportToMap(report, typeSet, idSet);
+        entry.put("latencyMs", (SystemClock.elapsedRealtimeNanos() - peerStartNs) / 1e6);
+        peers.put(pcId, entry);
+        onPeerDone.run();
+      });
+    }
+    // Released last so the response cannot complete before every request is issued.
+    onPeerDone.run();
+  }
+
   public void peerConnectionClose(final String id) {
     PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
     if (pco == null || pco.getPeerConnection() == null) {
@@ -1509,6 +1846,114 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
     }
   }
 
+  /** Receives the decoded arguments of a data channel send. */
+  interface DataChannelSender {
+    void dataChannelSend(String peerConnectionId, int dataChannelId, ByteBuffer bytebuffer,
+                         Boolean isBinary);
+  }
+
+  /** Decodes the arguments of a "dataChannelSend" method call; false if the text cannot be encoded. */
+  static boolean dataChannelSendCall(MethodCall call, DataChannelSender sender) {
+    String peerConnectionId = call.argument("peerConnectionId");
+    int dataChannelId = call.argument("dataChannelId");
+    String type = call.argument("type");
+    Boolean isBinary = type.equals("binary");
+    ByteBuffer byteBuffer;
+    if (isBinary) {
+      byteBuffer = ByteBuffer.wrap(call.argument("data"));
+    } else {
+      try {
+        String data = call.argument("data");
+        byteBuffer = ByteBuffer.wrap(data.getBytes("UTF-8"));
+      } catch (UnsupportedEncodingException e) {
+        return false;
+      }
+    }
+    sender.dataChannelSend(peerConnectionId, dataChannelId, byteBuffer, isBinary);
+    return true;
+  }
+
+  void dataChannelSendFrame(@Nullable ByteBuffer frame) {
+    dataChannelSendFrame(frame, frameIds, frameSender);
+  }
+
+  /**
+   * Maps the peer connection id bytes of a send frame to the id String without
+   * allocating when the id was seen recently. Holds the last few ids, as an
+   * app sends on a handful of peer connections at a time. Not thread safe.
+   */
+  static final class FrameIdCache {
+    private static final int SIZE = 8;
+
+    private final byte[][] bytes = new byte[SIZE][];
+    private final String[] ids = new String[SIZE];
+    private int next;
+
+    /** Reads {@code length} id bytes at the frame's position. */
+    String read(ByteBuffer frame, int length) {
+      int position = frame.position();
+      for (int i = 0; i < SIZE; i++) {
+        if (matches(bytes[i], frame, position, length)) {
+          frame.position(position + length);
+          return ids[i];
+        }
+      }
+      byte[] idBytes = new byte[length];
+      frame.get(idBytes);
+      String id = new String(idBytes, StandardCharsets.US_ASCII);
+      bytes[next] = idBytes;
+      ids[next] = id;
+      next = (next + 1) % SIZE;
+      return id;
+    }
+
+    private static boolean matches(@Nullable byte[] idBytes, ByteBuffer frame, int position, int length) {
+      if (idBytes == null || idBytes.length != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (frame.get(position + i) != idBytes[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Handles a frame from the "FlutterWebRTC/dataChannelSend" fast-path channel:
+   * {@code [u8 flags][u8 idLength][peerConnectionId][i32 dataChannelId][payload]}.
+   */
+  static void dataChannelSendFrame(@Nullable ByteBuffer frame, FrameIdCache ids,
+                                   DataChannelSender sender) {
+    if (frame == null || frame.remaining() < 6) {
+      Log.d(TAG, "dataChannelSendFrame() frame is too short");
+      return;
+    }
+    boolean isBinary = (frame.get() & DataChannelObserver.FRAME_FLAG_BINARY) != 0;
+    int idLength = frame.get() & 0xFF;
+    if (frame.remaining() < idLength + 4) {
+      Log.d(TAG, "dataChannelSendFrame() frame is too short");
+      return;
+    }
+    String peerConnectionId = ids.read(frame, idLength);
+    int dataChannelId = frame.getInt();
+    sender.dataChannelSend(peerConnectionId, dataChannelId, frame.slice(), isBinary);
+  }
+
+  public void dataChannelSetMessageChannel(String peerConnectionId, int dataChannelId,
+                                          boolean enabled) {
+    // Forward to PeerConnectionObserver which deals with DataChannels
+    // because DataChannel is owned by PeerConnection.
+    PeerConnectionObserver pco
+            = mPeerConnectionObservers.get(peerConnectionId);
+    if (pco == null || pco.getPeerConnection() == null) {
+      Log.d(TAG, "dataChannelSetMessageChannel() peerConnection is null");
+    } else {
+      pco.dataChannelSetMessageChannel(dataChannelId, enabled);
+    }
+  }
+
   public void dataChannelClose(String peerConnectionId, int dataChannelId) {
     // Forward to PeerConnectionObserver which deals with DataChannels
     // because DataChannel is owned by PeerConnection.
@@ -1,21 +1,29 @@
 package com.cloudwebrtc.webrtc;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.util.SparseArray;
 import androidx.annotation.Nullable;
 import com.cloudwebrtc.webrtc.utils.AnyThreadSink;
 import com.cloudwebrtc.webrtc.utils.ConstraintsArray;
 import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
+import com.cloudwebrtc.webrtc.utils.StatsUtils;
 import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodChannel.Result;
+import java.io.File;
 import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import org.webrtc.AudioTrack;
 import org.webrtc.CandidatePairChangeEvent;
 import org.webrtc.DataChannel;
@@ -24,36 +32,64 @@ import org.webrtc.IceCandidate;
 import org.webrtc.MediaStream;
 import org.webrtc.MediaStreamTrack;
 import org.webrtc.PeerConnection;
+import org.webrtc.RTCStatsCollectorCallback;
 import org.webrtc.RtpParameters;
 import org.webrtc.RtpReceiver;
 import org.webrtc.RtpSender;
 import org.webrtc.RtpTransceiver;
-import org.webrtc.StatsObserver;
-import org.webrtc.StatsReport;
 import org.webrtc.VideoTrack;
 
 class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.StreamHandler {
   private final static String TAG = FlutterWebRTCPlugin.TAG;
   private final SparseArray<DataChannel> dataChannels = new SparseArray<>();
+  private final SparseArray<DataChannelObserver> dataChannelObservers = new SparseArray<>();
   private BinaryMessenger messenger;
   private final String id;
   private PeerConnection peerConnection;
   private PeerConnection.RTCConfiguration configuration;
-  final Map<String, MediaStream> remoteStreams = new HashMap<>();
-  final Map<String, MediaStreamTrack> remoteTracks = new HashMap<>();
-  final Map<String, RtpTransceiver> transceivers = new HashMap<>();
+  final Map<String, MediaStream> remoteStreams = new ConcurrentHashMap<>();
+  final Map<String, MediaStreamTrack> remoteTracks = new ConcurrentHashMap<>();
+  final Map<String, RtpTransceiver> transceivers = new ConcurrentHashMap<>();
   private final StateProvider stateProvider;
+  private final MediaOwnerIndex mediaOwnerIndex;
   private final EventChannel eventChannel;
   private EventChannel.EventSink eventSink;
-
-  PeerConnectionObserver(PeerConnection.RTCConfiguration configuration, StateProvider stateProvider, BinaryMessenger messenger, String id) {
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  /**
+   * Window in milliseconds during which local ICE candidates are coalesced
+   * into a single "onIceCandidates" event. Zero disables batching.
+   */
+  private int iceCandidateBatchWindowMs = 0;
+  private final ArrayList<Object> pendingIceCandidates = new ArrayList<>();
+  private final Runnable flushIceCandidatesRunnable = this::flushIceCandidates;
+  private StatsSampler statsSampler;
+  /**
+   * Held from fetching RtpSender/RtpReceiver/RtpTransceiver wrappers until the
+   * last call on them, because the next fetch on any thread disposes them.
+   * Holders call into the PeerConnection, which blocks on the signaling
+   * thread, so WebRTC callbacks must never wait for this lock.
+   */
+  private final Object rtpCacheLock = new Object();
+  private volatile Map<String, RtpSender> senderCache;
+  private volatile Map<String, RtpReceiver> receiverCache;
+  private volatile Map<String, RtpTransceiver> transceiverCache;
+  /** Runs the callback work that needs {@link #rtpCacheLock}, in order. */
+  private final Executor worker;
+
+  PeerConnectionObserver(PeerConnection.RTCConfiguration configuration, StateProvider stateProvider,
+                         MediaOwnerIndex mediaOwnerIndex, BinaryMessenger messenger, String id,
+                         Executor worker) {
     this.configuration = configuration;
     this.stateProvider = stateProvider;
+    this.mediaOwnerIndex = mediaOwnerIndex;
     this.messenger = messenger;
     this.id = id;
+    this.worker = worker;
 
     eventChannel = new EventChannel(messenger, "FlutterWebRTC/peerConnectoinEvent" + id);
-    eventChannel.setStreamHandler(this);
+    // Messenger handlers may only be changed on the platform thread. Posted
+    // before the createPeerConnection reply, so Dart cannot listen earlier.
+    mainHandler.post(() -> eventChannel.setStreamHandler(this));
   }
 
   static private void resultError(String method, String error, Result result) {
@@ -80,17 +116,56 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     this.peerConnection = peerConnection;
   }
 
+  void setIceCandidateBatchWindow(int windowMs) {
+    this.iceCandidateBatchWindowMs = Math.max(0, windowMs);
+  }
+
+  synchronized void startStatsSampler(int intervalMs, @Nullable List<String> fields) {
+    stopStatsSampler();
+    statsSampler = new StatsSampler(this, peerConnection, intervalMs, fields);
+    statsSampler.start();
+  }
+
+  synchronized void stopStatsSampler() {
+    if (statsSampler != null) {
+      statsSampler.stop();
+      statsSampler = null;
+    }
+  }
+
   void close() {
-    peerConnection.close();
+    stopStatsSampler();
+    ArrayList<DataChannelObserver> observers = new ArrayList<>();
+    synchronized (dataChannels) {
+      for (int i = 0; i < dataChannelObservers.size(); i++) {
+        observers.add(dataChannelObservers.valueAt(i));
+      }
+      dataChannels.clear();
+      dataChannelObservers.clear();
+    }
+    for (DataChannelObserver observer : observers) {
+      observer.cancelFileTransfers();
+    }
+    mainHandler.removeCallbacks(flushIceCandidatesRunnable);
+    synchronized (pendingIceCandidates) {
+      pendingIceCandidates.clear();
+    }
+    synchronized (rtpCacheLock) {
+      peerConnection.close();
+      invalidateRtpCaches();
+    }
     remoteStreams.clear();
     remoteTracks.clear();
-    dataChannels.clear();
+    mediaOwnerIndex.removeOwner(this);
   }
 
   void dispose() {
     this.close();
-    peerConnection.dispose();
-    eventChannel.setStreamHandler(null);
+    synchronized (rtpCacheLock) {
+      // Disposes every RtpSender/RtpReceiver/RtpTransceiver wrapper too.
+      peerConnection.dispose();
+    }
+    mainHandler.post(() -> eventChannel.setStreamHandler(null));
   }
 
   void createDataChannel(String label, ConstraintsMap config, Result result) {
@@ -119,7 +194,6 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     // breakages).
     int dataChannelId = init.id;
     if (dataChannel != null && -1 != dataChannelId) {
-        dataChannels.put(dataChannelId, dataChannel);
         registerDataChannelObserver(dataChannelId, dataChannel);
 
         ConstraintsMap params = new ConstraintsMap();
@@ -131,33 +205,166 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     }
   }
 
+    /** The data channel observer for an id; the arrays are shared with WebRTC callbacks. */
+    @Nullable
+    private DataChannelObserver getDataChannelObserver(int dataChannelId) {
+        synchronized (dataChannels) {
+            return dataChannelObservers.get(dataChannelId);
+        }
+    }
+
     void dataChannelClose(int dataChannelId) {
-        DataChannel dataChannel = dataChannels.get(dataChannelId);
+        DataChannel dataChannel;
+        DataChannelObserver observer;
+        synchronized (dataChannels) {
+            dataChannel = dataChannels.get(dataChannelId);
+            observer = dataChannelObservers.get(dataChannelId);
+            dataChannels.remove(dataChannelId);
+            dataChannelObservers.remove(dataChannelId);
+        }
+        if (observer != null) {
+            observer.cancelFileTransfers();
+        }
         if (dataChannel != null) {
             dataChannel.close();
-            dataChannels.remove(dataChannelId);
         } else {
             Log.d(TAG, "dataChannelClose() dataChannel is null");
         }
     }
 
     void dataChannelSend(int dataChannelId, ByteBuffer byteBuffer, Boolean isBinary) {
-        DataChannel dataChannel = dataChannels.get(dataChannelId);
-        if (dataChannel != null) {
+        DataChannelObserver observer = getDataChannelObserver(dataChannelId);
+        if (observer != null) {
             DataChannel.Buffer buffer = new DataChannel.Buffer(byteBuffer, isBinary);
-            dataChannel.send(buffer);
+            if (!observer.send(buffer)) {
+                Log.d(TAG, "dataChannelSend() send failed");
+            }
         } else {
             Log.d(TAG, "dataChannelSend() dataChannel is null");
         }
     }
 
+    void dataChannelSetBufferedAmountThresholds(int dataChannelId, long highWaterMark,
+                                                long lowThreshold) {
+        DataChannelObserver observer = getDataChannelObserver(dataChannelId);
+        if (observer != null) {
+            observer.setBufferedAmountThresholds(highWaterMark, lowThreshold);
+        } else {
+            Log.d(TAG, "dataChannelSetBufferedAmountThresholds() dataChannel is null");
+        }
+    }
+
+    void dataChannelSendFile(int dataChannelId, String path, int chunkSize, Result result) {
+        DataChannelObserver observer = getDataChannelObserver(dataChannelId);
+        if (observer == null) {
+            resultError("dataChannelSendFile", "dataChannel is null", result);
+            return;
+        }
+        DataChannelFileTransfer transfer =
+                new DataChannelFileTransfer.Sender(observer, new File(path), chunkSize, result);
+        if (!observer.startFileTransfer(transfer)) {
+            resultError("dataChannelSendFile", "a file is already being sent", result);
+        }
+    }
+
+    void dataChannelReceiveToFile(int dataChannelId, String path, long size, Result result) {
+        DataChannelObserver observer = getDataChannelObserver(dataChannelId);
+        if (observer == null) {
+            resultError("dataChannelReceiveToFile", "dataChannel is null", result);
+            return;
+        }
+        DataChannelFileTransfer transfer =
+                new DataChannelFileTransfer.Receiver(observer, new File(path), size, result);
+        if (!observer.startFileTransfer(transfer)) {
+            resultError("dataChannelReceiveToFile", "a file is already being received", result);
+        }
+    }
+
+    long dataChannelGetBufferedAmount(int dataChannelId) {
+        DataChannelObserver observer = getDataChannelObserver(dataChannelId);
+        return observer != null ? observer.bufferedAmount() : 0;
+    }
+
+    void dataChannelSetMessageChannel(int dataChannelId, boolean enabled) {
+        DataChannelObserver observer = getDataChannelObserver(dataChannelId);
+        if (observer != null) {
+            observer.setMessageChannelEnabled(enabled);
+        } else {
+            Log.d(TAG, "dataChannelSetMessageChannel() dataChannel is null");
+        }
+    }
+
+    /**
+     * PeerConnection.getSenders()/getReceivers()/getTransceivers() dispose the
+     * wrappers handed out by the previous call, so every fetch goes through the
+     * helpers below, which also rebuild the id-keyed cache for that list.
+     * Callers hold {@link #rtpCacheLock} until they are done with the result.
+     */
+    List<RtpSender> getRtpSenders() {
+        synchronized (rtpCacheLock) {
+            List<RtpSender> senders = peerConnection.getSenders();
+            Map<String, RtpSender> cache = new HashMap<>();
+            for (RtpSender sender : senders) {
+                cache.put(sender.id(), sender);
+            }
+            senderCache = cache;
+            return senders;
+        }
+    }
+
+    List<RtpReceiver> getRtpReceivers() {
+        synchronized (rtpCacheLock) {
+            List<RtpReceiver> receivers = peerConnection.getReceivers();
+            Map<String, RtpReceiver> cache = new HashMap<>();
+            for (RtpReceiver receiver : receivers) {
+                cache.put(receiver.id(), receiver);
+                indexReceiverTrack(receiver);
+            }
+            receiverCache = cache;
+            return receivers;
+        }
+    }
+
+    List<RtpTransceiver> getRtpTransceivers() {
+        synchronized (rtpCacheLock) {
+            List<RtpTransceiver> transceivers = peerConnection.getTransceivers();
+            Map<String, RtpTransceiver> cache = new HashMap<>();
+            for (RtpTransceiver transceiver : transceivers) {
+                if (transceiver.getMid() != null) {
+                    cache.put(transceiver.getMid(), transceiver);
+                }
+                indexReceiverTrack(transceiver.getReceiver());
+            }
+            transceiverCache = cache;
+            return transceivers;
+        }
+    }
+
+    /**
+     * Forces the next id lookup to refetch. Cached wrappers stay valid until
+     * then, since only a new fetch disposes them. Does not take the lock, as
+     * it is called from WebRTC callbacks.
+     */
+    void invalidateRtpCaches() {
+        senderCache = null;
+        receiverCache = null;
+        transceiverCache = null;
+    }
+
     RtpTransceiver getRtpTransceiverById(String id) {
        RtpTransceiver transceiver = transceivers.get(id);
        if(null == transceiver) {
-           List<RtpTransceiver> transceivers = peerConnection.getTransceivers();
-           for(RtpTransceiver t : transceivers) {
-               if (id.equals(t.getMid())){
-                   transceiver = t;
+           synchronized (rtpCacheLock) {
+               Map<String, RtpTransceiver> cache = transceiverCache;
+               if (cache != null) {
+                   transceiver = cache.get(id);
+               } else {
+                   for (RtpTransceiver candidate : getRtpTransceivers()) {
+                       if (id.equals(candidate.getMid())) {
+                           transceiver = candidate;
+                           break;
+                       }
+                   }
                }
            }
        }
@@ -165,79 +372,118 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     }
 
     RtpSender getRtpSenderById(String id) {
-        List<RtpSender> senders = peerConnection.getSenders();
-        for(RtpSender sender : senders) {
-            if (id.equals(sender.id())){
-                return sender;
+        synchronized (rtpCacheLock) {
+            Map<String, RtpSender> cache = senderCache;
+            if (cache != null) {
+                return cache.get(id);
             }
+            for (RtpSender sender : getRtpSenders()) {
+                if (sender.id().equals(id)) {
+                    return sender;
+                }
+            }
+            return null;
         }
-        return null;
     }
 
     RtpReceiver getRtpReceiverById(String id) {
-        List<RtpReceiver> receivers = peerConnection.getReceivers();
-        for(RtpReceiver receiver : receivers) {
-            if (id.equals(receiver.id())){
-                return receiver;
+        synchronized (rtpCacheLock) {
+            Map<String, RtpReceiver> cache = receiverCache;
+            if (cache != null) {
+                return cache.get(id);
+            }
+            for (RtpReceiver receiver : getRtpReceivers()) {
+                if (receiver.id().equals(id)) {
+                    return receiver;
+                }
             }
+            return null;
         }
-        return null;
     }
 
-  void getStats(String trackId, final Result result) {
-    MediaStreamTrack track = null;
-    if (trackId == null
-        || trackId.isEmpty()
-        || (track = stateProvider.getLocalTracks().get(trackId)) != null
-        || (track = remoteTracks.get(trackId)) != null) {
-      peerConnection.getStats(
-          new StatsObserver() {
-            @Override
-            public void onComplete(StatsReport[] reports) {
-
-              final int reportCount = reports.length;
-              ConstraintsMap params = new ConstraintsMap();
-              ConstraintsArray stats = new ConstraintsArray();
-
-              for (int i = 0; i < reportCount; ++i) {
-                StatsReport report = reports[i];
-                ConstraintsMap report_map = new ConstraintsMap();
-
-                report_map.putString("id", report.id);
-                report_map.putString("type", report.type);
-                report_map.putDouble("timestamp", report.timestamp);
-
-                StatsReport.Value[] values = report.values;
-                ConstraintsMap v_map = new ConstraintsMap();
-                final int valueCount = values.length;
-                for (int j = 0; j < valueCount; ++j) {
-                  StatsReport.Value v = values[j];
-                  v_map.putString(v.name, v.value);
+    /** Inserts DTMF tones on the first audio sender, if any. */
+    void insertDtmf(String tone, int duration, int gap) {
+        synchronized (rtpCacheLock) {
+            RtpSender audioSender = null;
+            for (RtpSender sender : getRtpSenders()) {
+                if (sender.track() != null && sender.track().kind().equals("audio")) {
+                    audioSender = sender;
                 }
-
-                report_map.putMap("values", v_map.toMap());
-                stats.pushMap(report_map);
-              }
-
-              params.putArray("stats", stats.toArrayList());
-              result.success(params.toMap());
             }
-          },
-          track);
-    } else {
-        resultError("peerConnectionGetStats","MediaStreamTrack not found for id: " + trackId, result);
+            if (audioSender != null) {
+                DtmfSender dtmfSender = audioSender.dtmf();
+                dtmfSender.insertDtmf(tone, duration, gap);
+            }
+        }
     }
+
+  void getStats(String trackId, @Nullable List<String> types, @Nullable List<String> ids,
+                final Result result) {
+    final Set<String> typeSet = types != null ? new HashSet<>(types) : null;
+    final Set<String> idSet = ids != null ? new HashSet<>(ids) : null;
+    RTCStatsCollectorCallback callback =
+        report -> result.success(StatsUtils.statsReportToMap(report, typeSet, idSet));
+    if (trackId == null || trackId.isEmpty()) {
+      peerConnection.getStats(callback);
+      return;
+    }
+    synchronized (rtpCacheLock) {
+      for (RtpSender sender : getRtpSenders()) {
+        MediaStreamTrack track = sender.track();
+        if (track != null && trackId.equals(track.id())) {
+          peerConnection.getStats(sender, callback);
+          return;
+        }
+      }
+      for (RtpReceiver receiver : getRtpReceivers()) {
+        MediaStreamTrack track = receiver.track();
+        if (track != null && trackId.equals(track.id())) {
+          peerConnection.getStats(receiver, callback);
+          return;
+        }
+      }
+    }
+    resultError("peerConnectionGetStats", "MediaStreamTrack not found for id: " + trackId, result);
   }
 
   @Override
   public void onIceCandidate(final IceCandidate candidate) {
     Log.d(TAG, "onIceCandidate");
+    if (iceCandidateBatchWindowMs > 0) {
+      synchronized (pendingIceCandidates) {
+        pendingIceCandidates.add(candidateToMap(candidate));
+        if (pendingIceCandidates.size() == 1) {
+          mainHandler.postDelayed(flushIceCandidatesRunnable, iceCandidateBatchWindowMs);
+        }
+      }
+      return;
+    }
     ConstraintsMap params = new ConstraintsMap();
     params.putString("event", "onCandidate");
     params.putMap("candidate", candidateToMap(candidate));
     sendEvent(params);
   }
 
+  /**
+   * Emits all candidates gathered so far as a single "onIceCandidates" event.
+   * Called when the batch window elapses and when gathering completes.
+   */
+  private void flushIceCandidates() {
+    ArrayList<Object> candidates;
+    synchronized (pendingIceCandidates) {
+      mainHandler.removeCallbacks(flushIceCandidatesRunnable);
+      if (pendingIceCandidates.isEmpty()) {
+        return;
+      }
+      candidates = new ArrayList<>(pendingIceCandidates);
+      pendingIceCandidates.clear();
+    }
+    ConstraintsMap params = new ConstraintsMap();
+    params.putString("event", "onIceCandidates");
+    params.putArray("candidates", candidates);
+    sendEvent(params);
+  }
+
   @Override
   public void onSelectedCandidatePairChanged(CandidatePairChangeEvent event) {
       Log.d(TAG, "onSelectedCandidatePairChanged");
@@ -272,6 +518,10 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
   @Override
   public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
     Log.d(TAG, "onIceGatheringChange" + iceGatheringState.name());
+    if (iceGatheringState == PeerConnection.IceGatheringState.COMPLETE) {
+      // Deliver the remaining candidates before the gathering state change.
+      flushIceCandidates();
+    }
     ConstraintsMap params = new ConstraintsMap();
     params.putString("event", "iceGatheringState");
     params.putString("state", iceGatheringStateString(iceGatheringState));
@@ -310,6 +560,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     if (streamUID == null) {
       streamUID = stateProvider.getNextStreamUUID();
       remoteStreams.put(streamId, mediaStream);
+      mediaOwnerIndex.putStream(streamId, this);
     }
 
     ConstraintsMap params = new ConstraintsMap();
@@ -325,6 +576,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
       String trackId = track.id();
 
       remoteTracks.put(trackId, track);
+      mediaOwnerIndex.putTrack(trackId, this);
 
       ConstraintsMap trackInfo = new ConstraintsMap();
       trackInfo.putString("id", trackId);
@@ -340,6 +592,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
       String trackId = track.id();
 
       remoteTracks.put(trackId, track);
+      mediaOwnerIndex.putTrack(trackId, this);
 
       ConstraintsMap trackInfo = new ConstraintsMap();
       trackInfo.putString("id", trackId);
@@ -369,12 +622,15 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
 
     for (VideoTrack track : mediaStream.videoTracks) {
       this.remoteTracks.remove(track.id());
+      mediaOwnerIndex.removeTrack(track.id(), this);
     }
     for (AudioTrack track : mediaStream.audioTracks) {
       this.remoteTracks.remove(track.id());
+      mediaOwnerIndex.removeTrack(track.id(), this);
     }
 
     this.remoteStreams.remove(streamId);
+    mediaOwnerIndex.removeStream(streamId, this);
     ConstraintsMap params = new ConstraintsMap();
     params.putString("event", "onRemoveStream");
     params.putString("streamId", streamId);
@@ -383,6 +639,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
 
   @Override
   public void onTrack(RtpTransceiver transceiver) {
+      invalidateRtpCaches();
       /*
       ConstraintsMap params = new ConstraintsMap();
       params.putString("event", "onTrack");
@@ -397,6 +654,10 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
   @Override
   public void onAddTrack(RtpReceiver receiver, MediaStream[] mediaStreams) {
       Log.d(TAG, "onAddTrack");
+      invalidateRtpCaches();
+      if (receiver.track() != null) {
+          mediaOwnerIndex.putTrack(receiver.track().id(), this);
+      }
       // for plan-b
       for (MediaStream stream : mediaStreams) {
           String streamId = stream.getId();
@@ -433,16 +694,24 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
       params.putMap("receiver", rtpReceiverToMap(receiver));
 
       if(this.configuration.sdpSemantics == PeerConnection.SdpSemantics.UNIFIED_PLAN) {
-          List<RtpTransceiver> transceivers = peerConnection.getTransceivers();
-          for( RtpTransceiver transceiver : transceivers ) {
-              if(transceiver.getReceiver() != null && receiver.id().equals(transceiver.getReceiver().id())) {
-                  String transceiverId = transceiver.getMid();
-                  if(null == transceiverId) {
-                      transceiverId = stateProvider.getNextStreamUUID();
+          // Fetching transceivers needs rtpCacheLock, which this (signaling)
+          // thread must not wait for; the worker sends the event instead.
+          worker.execute(() -> {
+              synchronized (rtpCacheLock) {
+                  List<RtpTransceiver> transceivers = getRtpTransceivers();
+                  for( RtpTransceiver transceiver : transceivers ) {
+                      if(transceiver.getReceiver() != null && receiver.id().equals(transceiver.getReceiver().id())) {
+                          String transceiverId = transceiver.getMid();
+                          if(null == transceiverId) {
+                              transceiverId = stateProvider.getNextStreamUUID();
+                          }
+                          params.putMap("transceiver", transceiverToMap(transceiverId, transceiver));
+                      }
                   }
-                  params.putMap("transceiver", transceiverToMap(transceiverId, transceiver));
               }
-          }
+              sendEvent(params);
+          });
+          return;
       }
       sendEvent(params);
   }
@@ -463,21 +732,23 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     // INIT-ACK chunks only allowing a maximum of 65535 streams to
     // be negotiated (as defined by the WebRTC Data Channel
     // Establishment Protocol).
-    for (int i = 65536; i <= Integer.MAX_VALUE; ++i) {
-      if (null == dataChannels.get(i, null)) {
-        dataChannelId = i;
-        break;
+    synchronized (dataChannels) {
+      for (int i = 65536; i <= Integer.MAX_VALUE; ++i) {
+        if (null == dataChannels.get(i, null)) {
+          dataChannelId = i;
+          break;
+        }
       }
-    }
-    if (-1 == dataChannelId) {
-      return;
+      if (-1 == dataChannelId) {
+        return;
+      }
+      dataChannels.put(dataChannelId, dataChannel);
     }
     ConstraintsMap params = new ConstraintsMap();
     params.putString("event", "didOpenDataChannel");
     params.putInt("id", dataChannelId);
     params.putString("label", dataChannel.label());
 
-    dataChannels.put(dataChannelId, dataChannel);
     registerDataChannelObserver(dataChannelId, dataChannel);
 
     sendEvent(params);
@@ -487,12 +758,17 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     // DataChannel.registerObserver implementation does not allow to
     // unregister, so the observer is registered here and is never
     // unregistered
-    dataChannel.registerObserver(
-        new DataChannelObserver(messenger, id, dcId, dataChannel));
+    DataChannelObserver observer = new DataChannelObserver(messenger, id, dcId, dataChannel);
+    synchronized (dataChannels) {
+      dataChannels.put(dcId, dataChannel);
+      dataChannelObservers.put(dcId, observer);
+    }
+    dataChannel.registerObserver(observer);
   }
 
   @Override
   public void onRenegotiationNeeded() {
+    invalidateRtpCaches();
     ConstraintsMap params = new ConstraintsMap();
     params.putString("event", "onRenegotiationNeeded");
     sendEvent(params);
@@ -500,6 +776,8 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
 
   @Override
   public void onSignalingChange(PeerConnection.SignalingState signalingState) {
+    // Negotiation assigns mids and may add or remove senders and receivers.
+    invalidateRtpCaches();
     ConstraintsMap params = new ConstraintsMap();
     params.putString("event", "signalingState");
     params.putString("state", signalingStateString(signalingState));
@@ -877,169 +1155,211 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
   }
 
   public void addTrack(MediaStreamTrack track, List<String> streamIds, Result result){
-      RtpSender sender = peerConnection.addTrack(track, streamIds);
-      result.success(rtpSenderToMap(sender));
+      synchronized (rtpCacheLock) {
+          RtpSender sender = peerConnection.addTrack(track, streamIds);
+          invalidateRtpCaches();
+          result.success(rtpSenderToMap(sender));
+      }
   }
 
   public void removeTrack(String senderId, Result result){
-      RtpSender sender = getRtpSenderById(senderId);
-      if(sender == null){
-          resultError("removeTrack", "sender is null", result);
-          return;
+      synchronized (rtpCacheLock) {
+          RtpSender sender = getRtpSenderById(senderId);
+          if(sender == null){
+              resultError("removeTrack", "sender is null", result);
+              return;
+          }
+          boolean res = peerConnection.removeTrack(sender);
+          invalidateRtpCaches();
+          Map<String, Object> params = new HashMap<>();
+          params.put("result", res);
+          result.success(params);
       }
-      boolean res = peerConnection.removeTrack(sender);
-      Map<String, Object> params = new HashMap<>();
-      params.put("result", res);
-      result.success(params);
   }
 
   public void addTransceiver(MediaStreamTrack track, Map<String, Object> transceiverInit,  Result result) {
-      RtpTransceiver  transceiver;
-      if(transceiverInit != null){
-          transceiver = peerConnection.addTransceiver(track, mapToRtpTransceiverInit(transceiverInit));
-      } else {
-          transceiver = peerConnection.addTransceiver(track);
-      }
-      String transceiverId = transceiver.getMid();
-      if(null == transceiverId) {
-          transceiverId = stateProvider.getNextStreamUUID();
+      synchronized (rtpCacheLock) {
+          RtpTransceiver  transceiver;
+          if(transceiverInit != null){
+              transceiver = peerConnection.addTransceiver(track, mapToRtpTransceiverInit(transceiverInit));
+          } else {
+              transceiver = peerConnection.addTransceiver(track);
+          }
+          String transceiverId = transceiver.getMid();
+          if(null == transceiverId) {
+              transceiverId = stateProvider.getNextStreamUUID();
+          }
+          transceivers.put(transceiverId, transceiver);
+          invalidateRtpCaches();
+          indexReceiverTrack(transceiver.getReceiver());
+          result.success(transceiverToMap(transceiverId, transceiver));
       }
-      transceivers.put(transceiverId, transceiver);
-      result.success(transceiverToMap(transceiverId, transceiver));
   }
 
   public void addTransceiverOfType(String mediaType, Map<String, Object> transceiverInit,  Result result) {
-      RtpTransceiver  transceiver;
-      if(transceiverInit != null){
-          transceiver = peerConnection.addTransceiver(stringToMediaType(mediaType), mapToRtpTransceiverInit(transceiverInit));
-      } else {
-          transceiver = peerConnection.addTransceiver(stringToMediaType(mediaType));
+      synchronized (rtpCacheLock) {
+          RtpTransceiver  transceiver;
+          if(transceiverInit != null){
+              transceiver = peerConnection.addTransceiver(stringToMediaType(mediaType), mapToRtpTransceiverInit(transceiverInit));
+          } else {
+              transceiver = peerConnection.addTransceiver(stringToMediaType(mediaType));
+          }
+          String transceiverId = transceiver.getMid();
+          if(null == transceiverId) {
+              transceiverId = stateProvider.getNextStreamUUID();
+          }
+          transceivers.put(transceiverId, transceiver);
+          invalidateRtpCaches();
+          indexReceiverTrack(transceiver.getReceiver());
+          result.success(transceiverToMap(transceiverId, transceiver));
       }
-      String transceiverId = transceiver.getMid();
-      if(null == transceiverId) {
-          transceiverId = stateProvider.getNextStreamUUID();
+  }
+
+  private void indexReceiverTrack(@Nullable RtpReceiver receiver) {
+      if (receiver != null && receiver.track() != null) {
+          mediaOwnerIndex.putTrack(receiver.track().id(), this);
       }
-      transceivers.put(transceiverId, transceiver);
-      result.success(transceiverToMap(transceiverId, transceiver));
   }
 
   public void rtpTransceiverSetDirection(String direction, String transceiverId, Result result) {
-      RtpTransceiver transceiver = getRtpTransceiverById(transceiverId);
-      if (transceiver == null) {
-          resultError("rtpTransceiverSetDirection", "transceiver is null", result);
-          return;
+      synchronized (rtpCacheLock) {
+          RtpTransceiver transceiver = getRtpTransceiverById(transceiverId);
+          if (transceiver == null) {
+              resultError("rtpTransceiverSetDirection", "transceiver is null", result);
+              return;
+          }
+          transceiver.setDirection(stringToTransceiverDirection(direction));
+          result.success(null);
       }
-      transceiver.setDirection(stringToTransceiverDirection(direction));
-      result.success(null);
   }
 
   public void rtpTransceiverGetCurrentDirection(String transceiverId, Result result) {
-      RtpTransceiver transceiver = getRtpTransceiverById(transceiverId);
-      if (transceiver == null) {
-          resultError("rtpTransceiverGetCurrentDirection", "transceiver is null", result);
-          return;
+      synchronized (rtpCacheLock) {
+          RtpTransceiver transceiver = getRtpTransceiverById(transceiverId);
+          if (transceiver == null) {
+              resultError("rtpTransceiverGetCurrentDirection", "transceiver is null", result);
+              return;
+          }
+          ConstraintsMap params = new ConstraintsMap();
+          params.putString("result", transceiverDirectionString(transceiver.getDirection()));
+          result.success(params.toMap());
       }
-      ConstraintsMap params = new ConstraintsMap();
-      params.putString("result", transceiverDirectionString(transceiver.getDirection()));
-      result.success(params.toMap());
   }
 
     public void rtpTransceiverStop(String transceiverId, Result result) {
-        RtpTransceiver transceiver = getRtpTransceiverById(transceiverId);
-        if (transceiver == null) {
-            resultError("rtpTransceiverStop", "transceiver is null", result);
-            return;
+        synchronized (rtpCacheLock) {
+            RtpTransceiver transceiver = getRtpTransceiverById(transceiverId);
+            if (transceiver == null) {
+                resultError("rtpTransceiverStop", "transceiver is null", result);
+                return;
+            }
+            transceiver.stop();
+            invalidateRtpCaches();
+            result.success(null);
         }
-        transceiver.stop();
-        result.success(null);
     }
 
     public void rtpSenderSetParameters(String rtpSenderId, Map<String, Object> parameters, Result result) {
-        RtpSender sender = getRtpSenderById(rtpSenderId);
-        if (sender == null) {
-            resultError("rtpSenderSetParameters", "sender is null", result);
-            return;
+        synchronized (rtpCacheLock) {
+            RtpSender sender = getRtpSenderById(rtpSenderId);
+            if (sender == null) {
+                resultError("rtpSenderSetParameters", "sender is null", result);
+                return;
+            }
+            final RtpParameters updatedParameters = updateRtpParameters(parameters, sender.getParameters());
+            final Boolean success = sender.setParameters(updatedParameters);
+            ConstraintsMap params = new ConstraintsMap();
+            params.putBoolean("result", success);
+            result.success(params.toMap());
         }
-        final RtpParameters updatedParameters = updateRtpParameters(parameters, sender.getParameters());
-        final Boolean success = sender.setParameters(updatedParameters);
-        ConstraintsMap params = new ConstraintsMap();
-        params.putBoolean("result", success);
-        result.success(params.toMap());
     }
 
     public void rtpSenderSetTrack(String rtpSenderId, MediaStreamTrack track, Result result, boolean replace) {
-        RtpSender sender = getRtpSenderById(rtpSenderId);
-        if (sender == null) {
-            resultError("rtpSenderSetTrack", "sender is null", result);
-            return;
+        synchronized (rtpCacheLock) {
+            RtpSender sender = getRtpSenderById(rtpSenderId);
+            if (sender == null) {
+                resultError("rtpSenderSetTrack", "sender is null", result);
+                return;
+            }
+            sender.setTrack(track, replace );
+            result.success(null);
         }
-        sender.setTrack(track, replace );
-        result.success(null);
     }
 
     public void rtpSenderDispose(String rtpSenderId, Result result) {
-        RtpSender sender = getRtpSenderById(rtpSenderId);
-        if (sender == null) {
-            resultError("rtpSenderDispose", "sender is null", result);
-            return;
+        synchronized (rtpCacheLock) {
+            RtpSender sender = getRtpSenderById(rtpSenderId);
+            if (sender == null) {
+                resultError("rtpSenderDispose", "sender is null", result);
+                return;
+            }
+            sender.dispose();
+            invalidateRtpCaches();
+            result.success(null);
         }
-        sender.dispose();
-        result.success(null);
     }
 
     public void getSenders(Result result) {
-      List<RtpSender> senders = peerConnection.getSenders();
-      ConstraintsArray sendersParams = new ConstraintsArray();
-      for(RtpSender sender : senders){
-        sendersParams.pushMap(new ConstraintsMap(rtpSenderToMap(sender)));
+      synchronized (rtpCacheLock) {
+        List<RtpSender> senders = getRtpSenders();
+        ConstraintsArray sendersParams = new ConstraintsArray();
+        for(RtpSender sender : senders){
+          sendersParams.pushMap(new ConstraintsMap(rtpSenderToMap(sender)));
+        }
+        ConstraintsMap params = new ConstraintsMap();
+        params.putArray("senders", sendersParams.toArrayList());
+        result.success(params.toMap());
       }
-      ConstraintsMap params = new ConstraintsMap();
-      params.putArray("senders", sendersParams.toArrayList());
-      result.success(params.toMap());
     }
   
     public void getReceivers(Result result) {
-      List<RtpReceiver> receivers = peerConnection.getReceivers();
-      ConstraintsArray receiversParams = new ConstraintsArray();
-      for(RtpReceiver receiver : receivers){
-        receiversParams.pushMap(new ConstraintsMap(rtpReceiverToMap(receiver)));
+      synchronized (rtpCacheLock) {
+        List<RtpReceiver> receivers = getRtpReceivers();
+        ConstraintsArray receiversParams = new ConstraintsArray();
+        for(RtpReceiver receiver : receivers){
+          receiversParams.pushMap(new ConstraintsMap(rtpReceiverToMap(receiver)));
+        }
+        ConstraintsMap params = new ConstraintsMap();
+        params.putArray("receivers", receiversParams.toArrayList());
+        result.success(params.toMap());
       }
-      ConstraintsMap params = new ConstraintsMap();
-      params.putArray("receivers", receiversParams.toArrayList());
-      result.success(params.toMap());
     }
   
     public void getTransceivers(Result result) {
-      List<RtpTransceiver> transceivers = peerConnection.getTransceivers();
-      ConstraintsArray transceiversParams = new ConstraintsArray();
-      for(RtpTransceiver transceiver : transceivers){
-          String transceiverId = transceiver.getMid();
-          if(null == transceiverId) {
-              transceiverId = stateProvider.getNextStreamUUID();
-          }
-        transceiversParams.pushMap(new ConstraintsMap(transceiverToMap(transceiverId, transceiver)));
+      synchronized (rtpCacheLock) {
+        List<RtpTransceiver> transceivers = getRtpTransceivers();
+        ConstraintsArray transceiversParams = new ConstraintsArray();
+        for(RtpTransceiver transceiver : transceivers){
+            String transceiverId = transceiver.getMid();
+            if(null == transceiverId) {
+                transceiverId = stateProvider.getNextStreamUUID();
+            }
+          transceiversParams.pushMap(new ConstraintsMap(transceiverToMap(transceiverId, transceiver)));
+        }
+        ConstraintsMap params = new ConstraintsMap();
+        params.putArray("transceivers", transceiversParams.toArrayList());
+        result.success(params.toMap());
       }
-      ConstraintsMap params = new ConstraintsMap();
-      params.putArray("transceivers", transceiversParams.toArrayList());
-      result.success(params.toMap());
     }
 
     protected MediaStreamTrack getTransceiversTrack(String trackId) {
-        if(this.configuration.sdpSemantics != PeerConnection.SdpSemantics.UNIFIED_PLAN) {
-            return null;
-        }
-        MediaStreamTrack track = null;
-        List<RtpTransceiver> transceivers = peerConnection.getTransceivers();
-        for (RtpTransceiver transceiver : transceivers) {
-            RtpReceiver receiver = transceiver.getReceiver();
-            if (receiver != null) {
-                if (receiver.track() != null && receiver.track().id().equals(trackId)) {
-                    track = receiver.track();
-                    break;
+        synchronized (rtpCacheLock) {
+            if(this.configuration.sdpSemantics != PeerConnection.SdpSemantics.UNIFIED_PLAN) {
+                return null;
+            }
+            MediaStreamTrack track = null;
+            List<RtpTransceiver> transceivers = getRtpTransceivers();
+            for (RtpTransceiver transceiver : transceivers) {
+                RtpReceiver receiver = transceiver.getReceiver();
+                if (receiver != null) {
+                    if (receiver.track() != null && receiver.track().id().equals(trackId)) {
+                        track = receiver.track();
+                        break;
+                    }
                 }
             }
+            return track;
         }
-        return track;
     }
 
 }
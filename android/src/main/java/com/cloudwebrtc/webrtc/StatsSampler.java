@@ -0,0 +1,185 @@
+package com.cloudwebrtc.webrtc;
+
+import androidx.annotation.Nullable;
+
+import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically collects standard stats for one peer connection and pushes a
+ * compact "onStatsSample" event with per-second rates computed against the
+ * previous sample, so Dart does not have to poll and diff full reports.
+ *
+ * <p>Reported metrics: {@code bitrate} (bits/s) and {@code packetLossRate}
+ * (0..1) for RTP streams, {@code jitter} and {@code roundTripTime} (seconds),
+ * and {@code framesDecodedPerSecond} for inbound video.
+ */
+class StatsSampler {
+    static final int MIN_INTERVAL_MS = 100;
+
+    private final PeerConnectionObserver observer;
+    private final PeerConnection peerConnection;
+    private final long intervalMs;
+    @Nullable
+    private final Set<String> fields;
+    private final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "StatsSampler"));
+    /** Previous sample per stats id; only touched on the scheduler thread. */
+    private Map<String, RTCStats> previous = new HashMap<>();
+    /** Held while calling into the peer connection, so stop() waits out a running collect(). */
+    private final Object collectLock = new Object();
+    private boolean stopped = false;
+
+    StatsSampler(PeerConnectionObserver observer, PeerConnection peerConnection,
+                 int intervalMs, @Nullable List<String> fields) {
+        this.observer = observer;
+        this.peerConnection = peerConnection;
+        this.intervalMs = Math.max(MIN_INTERVAL_MS, intervalMs);
+        this.fields = fields != null ? new HashSet<>(fields) : null;
+    }
+
+    void start() {
+        scheduler.scheduleAtFixedRate(this::collect, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Once this returns the peer connection is no longer used, so it may be disposed. */
+    void stop() {
+        synchronized (collectLock) {
+            stopped = true;
+        }
+        scheduler.shutdownNow();
+    }
+
+    private void collect() {
+        synchronized (collectLock) {
+            if (stopped) {
+                return;
+            }
+            peerConnection.getStats(report -> {
+                // The callback arrives on the signaling thread; compute deltas off it.
+                try {
+                    scheduler.execute(() -> process(report));
+                } catch (RejectedExecutionException e) {
+                    // Stopped while the report was being collected.
+                }
+            });
+        }
+    }
+
+    private void process(RTCStatsReport report) {
+        Map<String, RTCStats> statsMap = report.getStatsMap();
+        Map<String, RTCStats> current = new HashMap<>();
+        ArrayList<Object> samples = new ArrayList<>();
+        for (RTCStats stats : statsMap.values()) {
+            ConstraintsMap sample = null;
+            switch (stats.getType()) {
+                case "inbound-rtp":
+                    current.put(stats.getId(), stats);
+                    sample = sampleRtp(stats, "bytesReceived", "packetsReceived");
+                    putGauge(sample, "jitter", stats.getMembers().get("jitter"));
+                    putRate(sample, "framesDecodedPerSecond", stats, "framesDecoded", 1);
+                    break;
+                case "outbound-rtp":
+                    current.put(stats.getId(), stats);
+                    sample = sampleRtp(stats, "bytesSent", null);
+                    break;
+                case "remote-inbound-rtp":
+                    sample = new ConstraintsMap();
+                    putGauge(sample, "packetLossRate", stats.getMembers().get("fractionLost"));
+                    putGauge(sample, "jitter", stats.getMembers().get("jitter"));
+                    putGauge(sample, "roundTripTime", stats.getMembers().get("roundTripTime"));
+                    break;
+                case "candidate-pair":
+                    if (Boolean.TRUE.equals(stats.getMembers().get("nominated"))
+                            && "succeeded".equals(stats.getMembers().get("state"))) {
+                        sample = new ConstraintsMap();
+                        putGauge(sample, "roundTripTime",
+                            stats.getMembers().get("currentRoundTripTime"));
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (sample != null && sample.toMap().size() > 0) {
+                sample.putString("id", stats.getId());
+                sample.putString("type", stats.getType());
+                Object kind = stats.getMembers().get("kind");
+                if (kind != null) {
+                    sample.putString("kind", kind.toString());
+                }
+                samples.add(sample.toMap());
+            }
+        }
+        previous = current;
+        if (samples.isEmpty()) {
+            return;
+        }
+        ConstraintsMap params = new ConstraintsMap();
+        params.putString("event", "onStatsSample");
+        params.putDouble("timestamp", report.getTimestampUs() / 1000.0);
+        params.putArray("samples", samples);
+        observer.sendEvent(params);
+    }
+
+    private ConstraintsMap sampleRtp(RTCStats stats, String bytesKey, @Nullable String packetsKey) {
+        ConstraintsMap sample = new ConstraintsMap();
+        putRate(sample, "bitrate", stats, bytesKey, 8);
+        RTCStats last = previous.get(stats.getId());
+        if (packetsKey != null && last != null && wants("packetLossRate")) {
+            double lost = delta(stats, last, "packetsLost");
+            double received = delta(stats, last, packetsKey);
+            if (lost >= 0 && received >= 0 && lost + received > 0) {
+                sample.putDouble("packetLossRate", lost / (lost + received));
+            }
+        }
+        return sample;
+    }
+
+    /** Puts {@code (counter - previous counter) * scale / elapsed seconds}. */
+    private void putRate(ConstraintsMap sample, String name, RTCStats stats, String counter,
+                         double scale) {
+        RTCStats last = previous.get(stats.getId());
+        if (last == null || !wants(name)) {
+            return;
+        }
+        double seconds = (stats.getTimestampUs() - last.getTimestampUs()) / 1_000_000.0;
+        double delta = delta(stats, last, counter);
+        if (seconds > 0 && delta >= 0) {
+            sample.putDouble(name, delta * scale / seconds);
+        }
+    }
+
+    private void putGauge(ConstraintsMap sample, String name, Object value) {
+        if (value instanceof Number && wants(name)) {
+            sample.putDouble(name, ((Number) value).doubleValue());
+        }
+    }
+
+    private boolean wants(String name) {
+        return fields == null || fields.contains(name);
+    }
+
+    /** Returns -1 when the counter is missing from either sample. */
+    private static double delta(RTCStats current, RTCStats last, String counter) {
+        Object now = current.getMembers().get(counter);
+        Object before = last.getMembers().get(counter);
+        if (!(now instanceof Number) || !(before instanceof Number)) {
+            return -1;
+        }
+        return ((Number) now).doubleValue() - ((Number) before).doubleValue();
+    }
+}
@@ -0,0 +1,86 @@
+package com.cloudwebrtc.webrtc.record;
+
+/**
+ * Stamps audio chunks with the time their first sample was captured. A chunk
+ * arrives right after its last sample was captured, which anchors the sample
+ * clock; from then on time advances by the samples delivered, and the anchor
+ * is only nudged when it drifts from the monotonic clock. Not thread-safe;
+ * meant for the single thread that delivers the chunks.
+ *
+ * <p>A chunk can arrive late but never before its samples were captured. A
+ * chunk arriving earlier than its timestamp allows therefore proves the
+ * clock is ahead, and the anchor is moved back at once. A late chunk may
+ * only have been delayed, as after a delivery stall that is caught up in a
+ * burst, so the anchor is only moved forward when every chunk of the last
+ * DRIFT_WINDOW_CHUNKS to DRIFT_WINDOW_CHUNKS * 2 arrived late.
+ */
+class AudioClock {
+    /**
+     * Timestamps stay within this of the capture time, delivery jitter aside.
+     * Kept below one 30 fps frame interval (33.3 ms), so audio never lands a
+     * whole video frame away from the picture it was captured with.
+     */
+    static final long MAX_DRIFT_US = 20_000;
+    /** Correction applied per chunk. */
+    static final long SLEW_US = 1000;
+    /** A larger lag means capture stalled; the clock is re-anchored, leaving a gap. */
+    static final long MAX_GAP_US = 500_000;
+    /** About a second of 10 ms chunks. */
+    static final int DRIFT_WINDOW_CHUNKS = 100;
+
+    private long anchorUs = -1;
+    private long framesSinceAnchor = 0;
+    /** Smallest lag of the previous and the current window. */
+    private long previousMinLagUs = Long.MAX_VALUE;
+    private long currentMinLagUs = Long.MAX_VALUE;
+    private int chunksInWindow = 0;
+
+    static long durationUs(int frames, int sampleRate) {
+        return frames * 1_000_000L / sampleRate;
+    }
+
+    /**
+     * Returns the presentation time of a chunk of frames that arrived at
+     * nowUs on the monotonic clock.
+     */
+    long timestamp(int frames, int sampleRate, long nowUs) {
+        long durationUs = durationUs(frames, sampleRate);
+        long presentationTimeUs = anchorUs + framesSinceAnchor * 1_000_000L / sampleRate;
+        // How much later than its timestamp allows the chunk arrived.
+        long lagUs = nowUs - durationUs - presentationTimeUs;
+        if (anchorUs < 0 || lagUs > MAX_GAP_US) {
+            anchorUs = nowUs - durationUs;
+            framesSinceAnchor = 0;
+            presentationTimeUs = anchorUs;
+            lagUs = 0;
+            previousMinLagUs = Long.MAX_VALUE;
+            currentMinLagUs = Long.MAX_VALUE;
+            chunksInWindow = 0;
+        }
+        currentMinLagUs = Math.min(currentMinLagUs, lagUs);
+        // No forward correction until a full window has been seen.
+        long windowMinLagUs = previousMinLagUs == Long.MAX_VALUE
+                ? 0 : Math.min(previousMinLagUs, currentMinLagUs);
+        long slewUs = 0;
+        if (lagUs < 0) {
+            slewUs = -Math.min(SLEW_US, -lagUs);
+        } else if (windowMinLagUs > MAX_DRIFT_US / 2) {
+            // Half the bound, leaving room for the lag that builds up during a window.
+            slewUs = SLEW_US;
+        }
+        anchorUs += slewUs;
+        presentationTimeUs += slewUs;
+        // Lags measured before the slew overstate it for the window's remaining chunks.
+        if (slewUs > 0) {
+            previousMinLagUs -= slewUs;
+            currentMinLagUs -= slewUs;
+        }
+        if (++chunksInWindow == DRIFT_WINDOW_CHUNKS) {
+            previousMinLagUs = currentMinLagUs;
+            currentMinLagUs = Long.MAX_VALUE;
+            chunksInWindow = 0;
+        }
+        framesSinceAnchor += frames;
+        return presentationTimeUs;
+    }
+}
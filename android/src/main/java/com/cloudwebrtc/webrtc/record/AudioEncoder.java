@@ -0,0 +1,330 @@
+package com.cloudwebrtc.webrtc.record;
+
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.webrtc.audio.JavaAudioDeviceModule;
+import org.webrtc.audio.JavaAudioDeviceModule.SamplesReadyCallback;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes recorded audio samples (AAC or Opus) with MediaCodec in
+ * asynchronous mode and hands the output to a {@link MuxerWriter}. The codec
+ * is created on its own thread so its callbacks arrive there; samples are
+ * paired with free input buffers on that thread and never wait for the codec.
+ *
+ * <p>Timestamps come from an {@link AudioClock} anchored to
+ * {@link System#nanoTime()}, the clock WebRTC stamps video frames with, so
+ * audio and video share a timeline in the muxer.
+ */
+class AudioEncoder implements SamplesReadyCallback {
+    private static final String TAG = "AudioEncoder";
+    /**
+     * Chunks copied but not yet handed to the codec, at most: about half a
+     * second of 10 ms chunks. Further chunks are dropped on the producer
+     * thread. They keep advancing the clock, so this leaves a gap instead of
+     * shifting audio.
+     */
+    private static final int MAX_PENDING_SAMPLES = 50;
+    /** Initial chunk capacity: 10 ms of 48 kHz stereo float samples. */
+    private static final int CHUNK_BYTES = 480 * 2 * 4;
+
+    /** A copy of one samples callback; reused, see {@link #freeChunks}. */
+    private static final class Chunk {
+        byte[] data = new byte[CHUNK_BYTES];
+        int size;
+        int sampleRate;
+        int channelCount;
+        long presentationTimeUs;
+        long durationUs;
+
+        void set(byte[] samples, int sampleRate, int channelCount, long presentationTimeUs, long durationUs) {
+            if (samples.length > data.length) {
+                // Only for formats larger than CHUNK_BYTES; the array is kept.
+                data = new byte[samples.length];
+            }
+            System.arraycopy(samples, 0, data, 0, samples.length);
+            this.size = samples.length;
+            this.sampleRate = sampleRate;
+            this.channelCount = channelCount;
+            this.presentationTimeUs = presentationTimeUs;
+            this.durationUs = durationUs;
+        }
+    }
+
+    private final MuxerWriter writer;
+    private final String mimeType;
+    private final int bitrate;
+    private final HandlerThread codecThread;
+    private final Handler codecHandler;
+    private volatile boolean running = true;
+    // Only touched on the codec thread.
+    private MediaCodec codec;
+    private MuxerWriter.Track track;
+    private final ArrayDeque<Integer> freeInputBuffers = new ArrayDeque<>();
+    private boolean stopRequested = false;
+    private boolean endOfStreamQueued = false;
+    private long endOfStreamTimeUs = 0;
+    // Only touched on the WebRTC audio thread.
+    private final AudioClock clock = new AudioClock();
+    /**
+     * Producers reuse their sample buffers (see AudioTrackInterceptor), so
+     * each callback is copied into a Chunk owned here. The chunks are
+     * preallocated with their arrays and cycle from freeChunks to readyChunks
+     * and back once the codec has them; both deques are sized up front and
+     * never grow, so the producer thread allocates nothing per buffer. When
+     * readyChunks stops being empty the single {@link #drain} runnable is
+     * posted to the codec thread, which takes every ready chunk. All three
+     * fields are guarded by freeChunks.
+     */
+    private final ArrayDeque<Chunk> freeChunks = new ArrayDeque<>(MAX_PENDING_SAMPLES);
+    private final ArrayDeque<Chunk> readyChunks = new ArrayDeque<>(MAX_PENDING_SAMPLES);
+    private boolean drainPosted = false;
+    private final Runnable drain = this::drain;
+    private volatile long droppedChunks = 0;
+    /**
+     * For getStats(): CPU time of the codec callback thread, CPU time spent
+     * in onWebRtcAudioRecordSamplesReady on the WebRTC audio thread, and the
+     * audio duration queued.
+     */
+    private volatile long callbackThreadCpuMs = 0;
+    private volatile long captureCpuNs = 0;
+    private volatile long encodedDurationUs = 0;
+
+    AudioEncoder(MuxerWriter writer, String mimeType, int bitrate) {
+        this.writer = writer;
+        this.mimeType = mimeType;
+        this.bitrate = bitrate;
+        codecThread = new HandlerThread(TAG);
+        codecThread.start();
+        codecHandler = new Handler(codecThread.getLooper());
+        for (int i = 0; i < MAX_PENDING_SAMPLES; i++) {
+            freeChunks.add(new Chunk());
+        }
+    }
+
+    @Override
+    public void onWebRtcAudioRecordSamplesReady(JavaAudioDeviceModule.AudioSamples audioSamples) {
+        if (!running)
+            return;
+        long startCpuNs = Debug.threadCpuTimeNanos();
+        byte[] data = audioSamples.getData();
+        int sampleRate = audioSamples.getSampleRate();
+        int channelCount = audioSamples.getChannelCount();
+        int frames = data.length / (bytesPerSample(audioSamples.getAudioFormat()) * channelCount);
+        long presentationTimeUs = clock.timestamp(frames, sampleRate, System.nanoTime() / 1000);
+        Chunk chunk;
+        synchronized (freeChunks) {
+            chunk = freeChunks.poll();
+        }
+        if (chunk == null) {
+            // The encoder is too far behind.
+            droppedChunks++;
+        } else {
+            chunk.set(data, sampleRate, channelCount, presentationTimeUs,
+                    AudioClock.durationUs(frames, sampleRate));
+            boolean post;
+            synchronized (freeChunks) {
+                readyChunks.add(chunk);
+                post = !drainPosted;
+                drainPosted = true;
+            }
+            if (post) {
+                codecHandler.post(drain);
+            }
+        }
+        captureCpuNs += Debug.threadCpuTimeNanos() - startCpuNs;
+    }
+
+    /** Runs on the codec thread; starts the codec on the first chunk and feeds it. */
+    private void drain() {
+        Chunk first;
+        synchronized (freeChunks) {
+            drainPosted = false;
+            first = readyChunks.peek();
+        }
+        if (codec == null) {
+            if (first == null || stopRequested) {
+                return;
+            }
+            if (!start(first.sampleRate, first.channelCount)) {
+                recycleReady();
+                return;
+            }
+        }
+        feed();
+        callbackThreadCpuMs = SystemClock.currentThreadTimeMillis();
+    }
+
+    /** Hands a chunk back once the codec no longer needs it. */
+    private void recycle(Chunk chunk) {
+        synchronized (freeChunks) {
+            freeChunks.push(chunk);
+        }
+    }
+
+    /** Drops every chunk not yet fed to the codec. */
+    private void recycleReady() {
+        synchronized (freeChunks) {
+            while (!readyChunks.isEmpty()) {
+                freeChunks.push(readyChunks.poll());
+            }
+        }
+    }
+
+    private static int bytesPerSample(int audioFormat) {
+        switch (audioFormat) {
+            case AudioFormat.ENCODING_PCM_8BIT:
+                return 1;
+            case AudioFormat.ENCODING_PCM_FLOAT:
+                return 4;
+            default:
+                return 2;
+        }
+    }
+
+    /**
+     * Recording cost so far, counting only the recorder's own work.
+     * "audioCallbackThreadCpuMs" is the CPU time of the thread that copies
+     * samples into the codec and hands its output to the writer;
+     * "audioCaptureCpuMs" is the time spent copying and timestamping samples
+     * on the WebRTC audio thread. The encoding itself runs inside MediaCodec,
+     * usually in another process, and is not included.
+     */
+    Map<String, Object> getStats() {
+        long durationMs = encodedDurationUs / 1000;
+        long captureCpuMs = captureCpuNs / 1000000;
+        long cpuMs = callbackThreadCpuMs + captureCpuMs;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("audioDurationMs", durationMs);
+        stats.put("audioDroppedChunks", droppedChunks);
+        stats.put("audioCallbackThreadCpuMs", callbackThreadCpuMs);
+        stats.put("audioCaptureCpuMs", captureCpuMs);
+        stats.put("audioCpuMsPerMinute", durationMs > 0 ? cpuMs * 60000.0 / durationMs : 0.0);
+        return stats;
+    }
+
+    /** Queues end-of-stream; the writer releases the codec once it is drained. */
+    void stop() {
+        running = false;
+        codecHandler.post(() -> {
+            stopRequested = true;
+            if (codec == null) {
+                codecThread.quitSafely();
+            } else {
+                feed();
+            }
+        });
+    }
+
+    private boolean start(int sampleRate, int channelCount) {
+        try {
+            codec = RecorderOptions.createEncoder(mimeType);
+            MediaFormat format = new MediaFormat();
+            format.setString(MediaFormat.KEY_MIME, mimeType);
+            format.setInteger(MediaFormat.KEY_CHANNEL_COUNT, channelCount);
+            format.setInteger(MediaFormat.KEY_SAMPLE_RATE, sampleRate);
+            format.setInteger(MediaFormat.KEY_BIT_RATE, bitrate);
+            if (MediaFormat.MIMETYPE_AUDIO_AAC.equals(mimeType)) {
+                format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+            }
+            // Created on the codec thread, so callbacks are delivered on it.
+            codec.setCallback(callback);
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            track = writer.addTrack(codec);
+            codec.start();
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to start audio encoder", e);
+            if (codec != null) {
+                codec.release();
+                codec = null;
+            }
+            running = false;
+            return false;
+        }
+    }
+
+    private void feed() {
+        if (endOfStreamQueued) {
+            // A callback that raced with stop().
+            recycleReady();
+            return;
+        }
+        try {
+            while (!freeInputBuffers.isEmpty()) {
+                Chunk chunk;
+                synchronized (freeChunks) {
+                    chunk = readyChunks.poll();
+                }
+                if (chunk != null) {
+                    int index = freeInputBuffers.poll();
+                    int size = chunk.size;
+                    long presentationTimeUs = chunk.presentationTimeUs;
+                    long durationUs = chunk.durationUs;
+                    ByteBuffer buffer = codec.getInputBuffer(index);
+                    buffer.clear();
+                    buffer.put(chunk.data, 0, size);
+                    recycle(chunk);
+                    codec.queueInputBuffer(index, 0, size, presentationTimeUs, 0);
+                    endOfStreamTimeUs = presentationTimeUs + durationUs;
+                    encodedDurationUs += durationUs;
+                } else if (stopRequested && !endOfStreamQueued) {
+                    int index = freeInputBuffers.poll();
+                    codec.queueInputBuffer(index, 0, 0, endOfStreamTimeUs, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                    endOfStreamQueued = true;
+                } else {
+                    break;
+                }
+            }
+        } catch (IllegalStateException e) {
+            // The writer released the codec after a stop timeout.
+            Log.w(TAG, "Audio encoder is no longer usable", e);
+            recycleReady();
+            freeInputBuffers.clear();
+        }
+    }
+
+    private final MediaCodec.Callback callback = new MediaCodec.Callback() {
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec mediaCodec, int index) {
+            freeInputBuffers.add(index);
+            feed();
+            callbackThreadCpuMs = SystemClock.currentThreadTimeMillis();
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec mediaCodec, int index,
+                                            @NonNull MediaCodec.BufferInfo info) {
+            writer.writeSample(track, index, info);
+            callbackThreadCpuMs = SystemClock.currentThreadTimeMillis();
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                codecThread.quitSafely();
+            }
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec mediaCodec, @NonNull MediaCodec.CodecException e) {
+            Log.e(TAG, "Audio encoder error", e);
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec mediaCodec, @NonNull MediaFormat format) {
+            writer.setFormat(track, format);
+        }
+    };
+}
@@ -9,26 +9,40 @@ import java.util.HashMap;
 
 /** JavaAudioDeviceModule allows attaching samples callback only on building
  *  We don't want to instantiate VideoFileRenderer and codecs at this step
- *  It's simple dummy class, it does nothing until samples are necessary */
+ *  It's simple dummy class, it does nothing until samples are necessary
+ *
+ *  Callbacks are attached and detached from other threads while the audio
+ *  thread delivers samples every 10 ms, so the audio thread only reads an
+ *  immutable snapshot that is replaced on every change: no lock and no
+ *  allocation per buffer. A callback may still get one buffer after it is
+ *  detached. */
 @SuppressWarnings("WeakerAccess")
 public class AudioSamplesInterceptor implements SamplesReadyCallback {
+    private static final SamplesReadyCallback[] NO_CALLBACKS = new SamplesReadyCallback[0];
 
     @SuppressLint("UseSparseArrays")
-    protected final HashMap<Integer, SamplesReadyCallback> callbacks = new HashMap<>();
+    private final HashMap<Integer, SamplesReadyCallback> callbacks = new HashMap<>();
+    private volatile SamplesReadyCallback[] snapshot = NO_CALLBACKS;
 
     @Override
     public void onWebRtcAudioRecordSamplesReady(AudioSamples audioSamples) {
-        for (SamplesReadyCallback callback : callbacks.values()) {
+        for (SamplesReadyCallback callback : snapshot) {
             callback.onWebRtcAudioRecordSamplesReady(audioSamples);
         }
     }
 
-    public void attachCallback(Integer id, SamplesReadyCallback callback) throws Exception {
+    public synchronized void attachCallback(Integer id, SamplesReadyCallback callback) throws Exception {
         callbacks.put(id, callback);
+        snapshot = callbacks.values().toArray(NO_CALLBACKS);
     }
 
-    public void detachCallback(Integer id) {
+    public synchronized void detachCallback(Integer id) {
         callbacks.remove(id);
+        snapshot = callbacks.values().toArray(NO_CALLBACKS);
+    }
+
+    protected boolean hasCallbacks() {
+        return snapshot.length > 0;
     }
 
 }
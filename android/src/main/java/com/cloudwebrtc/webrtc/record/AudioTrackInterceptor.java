@@ -12,14 +12,32 @@ import org.webrtc.audio.JavaAudioDeviceModule.SamplesReadyCallback;
 import java.nio.ByteBuffer;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 /**
  * Wrapper around audio track
  * Intercepts write calls and passes it to callback
+ *
+ * Runs on the real-time playout thread, so buffers are copied into a ring of
+ * preallocated samples instead of new arrays, and nothing is copied while no
+ * recorder is attached. A slot is overwritten RING_SIZE writes later, so
+ * callbacks must copy whatever they keep past the call; AudioEncoder copies
+ * into arrays of its own before queueing.
  * **/
 public final class AudioTrackInterceptor extends AudioTrack {
+    static final int RING_SIZE = 4;
+
     final public AudioTrack originalTrack;
     final private SamplesReadyCallback callback;
+    @Nullable
+    final private AudioSamplesInterceptor interceptor;
+    // The track's format never changes, so it is read once.
+    final private int audioFormat;
+    final private int channelCount;
+    final private int sampleRate;
+    // Only touched on the playout thread.
+    final private AudioSamples[] ring = new AudioSamples[RING_SIZE];
+    private int ringIndex = 0;
 
     public AudioTrackInterceptor(@NonNull AudioTrack originalTrack, @NonNull SamplesReadyCallback callback) {
         // That just random params, we don't care about object that will be created
@@ -33,35 +51,51 @@ public final class AudioTrackInterceptor extends AudioTrack {
         );
         this.originalTrack = originalTrack;
         this.callback = callback;
+        this.interceptor = callback instanceof AudioSamplesInterceptor
+            ? (AudioSamplesInterceptor) callback : null;
+        this.audioFormat = originalTrack.getAudioFormat();
+        this.channelCount = originalTrack.getChannelCount();
+        this.sampleRate = originalTrack.getSampleRate();
     }
 
     @Override
     public int write(@NonNull byte[] audioData, int offsetInBytes, int sizeInBytes) {
-        callback.onWebRtcAudioRecordSamplesReady(new AudioSamples(
-            originalTrack.getAudioFormat(),
-            originalTrack.getChannelCount(),
-            originalTrack.getSampleRate(),
-            audioData
-        ));
+        if (isTapped()) {
+            AudioSamples samples = nextSamples(sizeInBytes);
+            System.arraycopy(audioData, offsetInBytes, samples.getData(), 0, sizeInBytes);
+            callback.onWebRtcAudioRecordSamplesReady(samples);
+        }
         return originalTrack.write(audioData, offsetInBytes, sizeInBytes);
     }
 
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
     @Override
     public int write(@NonNull ByteBuffer audioData, int sizeInBytes, int writeMode) {
-        byte[] trimmed = new byte[sizeInBytes];
-        int position = audioData.position();
-        audioData.get(trimmed, 0, sizeInBytes);
-        audioData.position(position);
-        callback.onWebRtcAudioRecordSamplesReady(new AudioSamples(
-            originalTrack.getAudioFormat(),
-            originalTrack.getChannelCount(),
-            originalTrack.getSampleRate(),
-            trimmed
-        ));
+        if (isTapped()) {
+            AudioSamples samples = nextSamples(sizeInBytes);
+            int position = audioData.position();
+            audioData.get(samples.getData(), 0, sizeInBytes);
+            audioData.position(position);
+            callback.onWebRtcAudioRecordSamplesReady(samples);
+        }
         return originalTrack.write(audioData, sizeInBytes, writeMode);
     }
 
+    private boolean isTapped() {
+        return interceptor == null || interceptor.hasCallbacks();
+    }
+
+    /** The next ring slot, reallocated only when the buffer size changes. */
+    private AudioSamples nextSamples(int sizeInBytes) {
+        AudioSamples samples = ring[ringIndex];
+        if (samples == null || samples.getData().length != sizeInBytes) {
+            samples = new AudioSamples(audioFormat, channelCount, sampleRate, new byte[sizeInBytes]);
+            ring[ringIndex] = samples;
+        }
+        ringIndex = (ringIndex + 1) % RING_SIZE;
+        return samples;
+    }
+
     /**
      * Override all required calls to mimic original track
      * https://webrtc.googlesource.com/src/+/master/sdk/android/src/java/org/webrtc/audio/WebRtcAudioTrack.java
@@ -0,0 +1,136 @@
+package com.cloudwebrtc.webrtc.record;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Process-wide pool of direct buffers for frame conversions and recording,
+ * bucketed by power-of-two capacity so frames of the same geometry reuse the
+ * same buffers. Direct memory is only reclaimed by the GC, so pooled buffers
+ * are dropped under memory pressure; register the pool with
+ * Context.registerComponentCallbacks to get those signals.
+ */
+public final class DirectBufferPool implements ComponentCallbacks2 {
+    private static final int MIN_BUCKET_SHIFT = 12;
+    private static final int MAX_BUCKET_SHIFT = 30;
+    private static final int MAX_BUFFERS_PER_BUCKET = 4;
+    private static final long MAX_POOLED_BYTES = 32L * 1024 * 1024;
+
+    private static final DirectBufferPool instance = new DirectBufferPool();
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<ByteBuffer>[] buckets = new ArrayDeque[MAX_BUCKET_SHIFT + 1];
+    private long pooledBytes = 0;
+    /** Direct memory allocated by the pool so far, pooled or not. */
+    private long allocatedBytes = 0;
+
+    private DirectBufferPool() {
+        for (int i = MIN_BUCKET_SHIFT; i <= MAX_BUCKET_SHIFT; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+    }
+
+    public static DirectBufferPool getInstance() {
+        return instance;
+    }
+
+    /** Returns a cleared buffer with at least size bytes and its limit set to size. */
+    static ByteBuffer acquire(int size) {
+        return instance.take(size);
+    }
+
+    /** Hands a buffer from {@link #acquire(int)} back; it must not be used afterwards. */
+    static void release(ByteBuffer buffer) {
+        instance.give(buffer);
+    }
+
+    private static int bucketShift(int size) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(shift, MIN_BUCKET_SHIFT);
+    }
+
+    private ByteBuffer take(int size) {
+        int shift = bucketShift(size);
+        if (shift > MAX_BUCKET_SHIFT) {
+            throw new IllegalArgumentException("Buffer too large: " + size);
+        }
+        ByteBuffer buffer;
+        synchronized (this) {
+            buffer = buckets[shift].poll();
+            if (buffer != null) {
+                pooledBytes -= buffer.capacity();
+            }
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(1 << shift);
+            synchronized (this) {
+                allocatedBytes += buffer.capacity();
+            }
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    private void give(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int shift = bucketShift(capacity);
+        // Only buffers this pool allocated have an exact power-of-two capacity.
+        if (!buffer.isDirect() || shift > MAX_BUCKET_SHIFT || capacity != 1 << shift) {
+            return;
+        }
+        synchronized (this) {
+            if (buckets[shift].size() < MAX_BUFFERS_PER_BUCKET
+                    && pooledBytes + capacity <= MAX_POOLED_BYTES) {
+                buckets[shift].push(buffer);
+                pooledBytes += capacity;
+            }
+        }
+    }
+
+    synchronized void clear() {
+        for (int i = MIN_BUCKET_SHIFT; i <= MAX_BUCKET_SHIFT; i++) {
+            buckets[i].clear();
+        }
+        pooledBytes = 0;
+    }
+
+    synchronized long pooledBytes() {
+        return pooledBytes;
+    }
+
+    synchronized long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Clears, along with FrameCapturer's scratch memory, when the system runs
+     * low on memory while the app is in the foreground, or once the app is in
+     * the background LRU list. UI_HIDDEN alone is not memory pressure: a
+     * recording or frame tap keeps running while the UI is hidden and would
+     * have to reallocate everything.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        if ((level >= TRIM_MEMORY_RUNNING_LOW && level < TRIM_MEMORY_UI_HIDDEN)
+                || level >= TRIM_MEMORY_BACKGROUND) {
+            clear();
+            FrameCapturer.trimMemory();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        clear();
+        FrameCapturer.trimMemory();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+}
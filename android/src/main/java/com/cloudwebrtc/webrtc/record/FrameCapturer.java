@@ -1,36 +1,72 @@
 package com.cloudwebrtc.webrtc.record;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
-import android.graphics.Matrix;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.os.Handler;
 import android.os.Looper;
 
+import androidx.annotation.Nullable;
+
 import org.webrtc.VideoFrame;
 import org.webrtc.VideoSink;
 import org.webrtc.VideoTrack;
 import org.webrtc.YuvHelper;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import io.flutter.plugin.common.MethodChannel;
 
+/**
+ * Captures a single frame of a video track. The capture thread only retains
+ * the frame; scaling, rotation (in YUV, before encoding) and the single encode
+ * happen on a shared background thread. The image is written to a file, or
+ * returned in memory when no file is given.
+ */
 public class FrameCapturer implements VideoSink {
-    private VideoTrack videoTrack;
-    private File file;
+    private static final ExecutorService encoder =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "FrameCapturer"));
+    /** Only used on the encoder thread. */
+    private static final FrameEncoder frameEncoder = new FrameEncoder(new FrameEncoder.AndroidCodecs());
+
+    static final String FORMAT_JPEG = "jpeg";
+    static final String FORMAT_PNG = "png";
+    static final String FORMAT_WEBP = "webp";
+    static final String FORMAT_I420 = "i420";
+
+    private final VideoTrack videoTrack;
+    @Nullable
+    private final File file;
     private final MethodChannel.Result callback;
+    private final String format;
+    private final int quality;
+    /** Longest side of the output; 0 keeps the frame size. */
+    private final int maxDimension;
     private boolean gotFrame = false;
 
     public FrameCapturer(VideoTrack track, File file, MethodChannel.Result callback) {
+        this(track, file, null, callback);
+    }
+
+    /**
+     * @param file    destination, or null to return the encoded bytes
+     * @param options "format" (jpeg, png, webp or i420), "quality" (0-100) and "maxDimension"
+     */
+    public FrameCapturer(VideoTrack track, @Nullable File file, @Nullable Map<String, Object> options,
+                         MethodChannel.Result callback) {
+        if (options == null) {
+            options = Collections.emptyMap();
+        }
         videoTrack = track;
         this.file = file;
         this.callback = callback;
+        format = RecorderOptions.getString(options, "format", FORMAT_JPEG).toLowerCase();
+        quality = Math.max(0, Math.min(100, RecorderOptions.getInt(options, "quality", 100)));
+        maxDimension = RecorderOptions.getInt(options, "maxDimension", 0);
         track.addSink(this);
     }
 
@@ -40,76 +76,87 @@ public class FrameCapturer implements VideoSink {
             return;
         gotFrame = true;
         videoFrame.retain();
-        VideoFrame.Buffer buffer = videoFrame.getBuffer();
-        VideoFrame.I420Buffer i420Buffer = buffer.toI420();
-        ByteBuffer y = i420Buffer.getDataY();
-        ByteBuffer u = i420Buffer.getDataU();
-        ByteBuffer v = i420Buffer.getDataV();
-        int width = i420Buffer.getWidth();
-        int height = i420Buffer.getHeight();
-        int[] strides = new int[] {
-            i420Buffer.getStrideY(),
-            i420Buffer.getStrideU(),
-            i420Buffer.getStrideV()
-        };
-        final int chromaWidth = (width + 1) / 2;
-        final int chromaHeight = (height + 1) / 2;
-        final int minSize = width * height + chromaWidth * chromaHeight * 2;
-        ByteBuffer yuvBuffer = ByteBuffer.allocateDirect(minSize);
-        YuvHelper.I420ToNV12(y, strides[0], v, strides[2], u, strides[1], yuvBuffer, width, height);
-        YuvImage yuvImage = new YuvImage(
-            yuvBuffer.array(),
-            ImageFormat.NV21,
-            width,
-            height,
-            strides
-        );
-        videoFrame.release();
         new Handler(Looper.getMainLooper()).post(() -> {
             videoTrack.removeSink(this);
         });
+        encoder.execute(() -> {
+            try {
+                capture(videoFrame);
+            } catch (RuntimeException e) {
+                callback.error("captureFrame", e.getLocalizedMessage(), e);
+            }
+        });
+    }
+
+    private void capture(VideoFrame videoFrame) {
+        ByteBuffer i420;
+        int width;
+        int height;
         try {
-            if (!file.exists()) {
-                //noinspection ResultOfMethodCallIgnored
-                file.getParentFile().mkdirs();
-                //noinspection ResultOfMethodCallIgnored
-                file.createNewFile();
+            VideoFrame.Buffer buffer = videoFrame.getBuffer();
+            int[] size = scaledSize(buffer.getWidth(), buffer.getHeight());
+            VideoFrame.I420Buffer i420Buffer;
+            if (size[0] != buffer.getWidth() || size[1] != buffer.getHeight()) {
+                VideoFrame.Buffer scaled = buffer.cropAndScale(0, 0, buffer.getWidth(), buffer.getHeight(),
+                        size[0], size[1]);
+                i420Buffer = scaled.toI420();
+                scaled.release();
+            } else {
+                i420Buffer = buffer.toI420();
             }
-        } catch (IOException io) {
-            callback.error("IOException", io.getLocalizedMessage(), io);
-            return;
+            int rotation = videoFrame.getRotation();
+            width = rotation % 180 == 0 ? i420Buffer.getWidth() : i420Buffer.getHeight();
+            height = rotation % 180 == 0 ? i420Buffer.getHeight() : i420Buffer.getWidth();
+            i420 = DirectBufferPool.acquire(YuvConversions.i420Size(width, height));
+            // Rotating the planes is far cheaper than re-encoding a rotated bitmap.
+            YuvHelper.I420Rotate(
+                    i420Buffer.getDataY(), i420Buffer.getStrideY(),
+                    i420Buffer.getDataU(), i420Buffer.getStrideU(),
+                    i420Buffer.getDataV(), i420Buffer.getStrideV(),
+                    i420, i420Buffer.getWidth(), i420Buffer.getHeight(), rotation);
+            // YuvHelper moves the position while slicing out the planes.
+            i420.rewind();
+            i420Buffer.release();
+        } finally {
+            videoFrame.release();
         }
-        try (FileOutputStream outputStream = new FileOutputStream(file)) {
-            yuvImage.compressToJpeg(
-                new Rect(0, 0, width, height),
-                100,
-                outputStream
-            );
-            switch (videoFrame.getRotation()) {
-                case 0:
-                    break;
-                case 90:
-                case 180:
-                case 270:
-                    Bitmap original = BitmapFactory.decodeFile(file.toString());
-                    Matrix matrix = new Matrix();
-                    matrix.postRotate(videoFrame.getRotation());
-                    Bitmap rotated = Bitmap.createBitmap(original, 0, 0, original.getWidth(), original.getHeight(), matrix, true);
-                    FileOutputStream rotatedOutputStream = new FileOutputStream(file);
-                    rotated.compress(Bitmap.CompressFormat.JPEG, 100, rotatedOutputStream);
-                    break;
-                default:
-                    // Rotation is checked to always be 0, 90, 180 or 270 by VideoFrame
-                    throw new RuntimeException("Invalid rotation");
+
+        try {
+            byte[] bytes = frameEncoder.encode(i420, width, height, format, quality, file);
+            if (file != null) {
+                callback.success(null);
+            } else {
+                Map<String, Object> params = new HashMap<>();
+                params.put("bytes", bytes);
+                params.put("width", width);
+                params.put("height", height);
+                params.put("format", format);
+                callback.success(params);
             }
-            callback.success(null);
         } catch (IOException io) {
             callback.error("IOException", io.getLocalizedMessage(), io);
         } catch (IllegalArgumentException iae) {
             callback.error("IllegalArgumentException", iae.getLocalizedMessage(), iae);
         } finally {
-            file = null;
+            DirectBufferPool.release(i420);
         }
     }
 
+    /** Drops the encoder's scratch memory, once queued captures are done. */
+    static void trimMemory() {
+        encoder.execute(frameEncoder::trim);
+    }
+
+    /** Fits the frame into maxDimension x maxDimension, keeping even dimensions. */
+    private int[] scaledSize(int width, int height) {
+        int longest = Math.max(width, height);
+        if (maxDimension <= 0 || longest <= maxDimension) {
+            return new int[] {width, height};
+        }
+        double scale = (double) maxDimension / longest;
+        return new int[] {
+                Math.max(2, (int) (width * scale) & ~1),
+                Math.max(2, (int) (height * scale) & ~1)
+        };
+    }
 }
@@ -0,0 +1,170 @@
+package com.cloudwebrtc.webrtc.record;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.YuvHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes a packed I420 frame for {@link FrameCapturer}. Scratch memory is
+ * kept per geometry and reused: the NV21 array YuvImage needs, the RGBA
+ * buffer and bitmap for PNG and WebP, and the stream that collects in-memory
+ * output. Files are written straight from the encoder, so a capture to a
+ * file allocates nothing the size of the frame. Not thread-safe; only used on
+ * the FrameCapturer thread.
+ */
+final class FrameEncoder {
+    /** The platform steps of the encode. */
+    interface Codecs {
+        /** Converts I420 to NV21 (NV12 with the chroma planes swapped). */
+        void i420ToNv21(ByteBuffer i420, int width, int height, ByteBuffer nv21);
+
+        void compressNv21(byte[] nv21, int width, int height, int quality, OutputStream out);
+
+        /** Compresses RGBA pixels, one byte per channel, as PNG or WebP. */
+        void compressRgba(ByteBuffer rgba, int width, int height, boolean png, int quality, OutputStream out);
+
+        /** Drops whatever the codecs keep between captures. */
+        void trim();
+    }
+
+    /** The libyuv, YuvImage and Bitmap backed codecs used on devices. */
+    static final class AndroidCodecs implements Codecs {
+        @Nullable
+        private Bitmap bitmap;
+
+        @Override
+        public void i420ToNv21(ByteBuffer i420, int width, int height, ByteBuffer nv21) {
+            int chromaSize = YuvConversions.chromaSize(width, height);
+            YuvHelper.I420ToNV12(
+                    YuvConversions.plane(i420, 0, width * height), width,
+                    YuvConversions.plane(i420, width * height + chromaSize, chromaSize), (width + 1) / 2,
+                    YuvConversions.plane(i420, width * height, chromaSize), (width + 1) / 2,
+                    nv21, width, height);
+        }
+
+        @Override
+        public void compressNv21(byte[] nv21, int width, int height, int quality, OutputStream out) {
+            new YuvImage(nv21, ImageFormat.NV21, width, height, new int[] {width, width})
+                    .compressToJpeg(new Rect(0, 0, width, height), quality, out);
+        }
+
+        @Override
+        public void compressRgba(ByteBuffer rgba, int width, int height, boolean png, int quality,
+                                 OutputStream out) {
+            if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+                trim();
+                bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            }
+            // ARGB_8888 pixels are stored as R, G, B, A bytes.
+            bitmap.copyPixelsFromBuffer(rgba);
+            bitmap.compress(png ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.WEBP, quality, out);
+        }
+
+        @Override
+        public void trim() {
+            if (bitmap != null) {
+                bitmap.recycle();
+                bitmap = null;
+            }
+        }
+    }
+
+    private final Codecs codecs;
+    @Nullable
+    private byte[] nv21;
+    private ByteArrayOutputStream memoryOutput = new ByteArrayOutputStream();
+
+    FrameEncoder(Codecs codecs) {
+        this.codecs = codecs;
+    }
+
+    /**
+     * Encodes i420 as format into file, or returns the encoded bytes when file
+     * is null.
+     */
+    @Nullable
+    byte[] encode(ByteBuffer i420, int width, int height, String format, int quality, @Nullable File file)
+            throws IOException {
+        if (file == null) {
+            if (FrameCapturer.FORMAT_I420.equals(format)) {
+                byte[] bytes = new byte[i420.remaining()];
+                i420.get(bytes);
+                return bytes;
+            }
+            memoryOutput.reset();
+            encode(i420, width, height, format, quality, memoryOutput);
+            return memoryOutput.toByteArray();
+        }
+        File parent = file.getParentFile();
+        if (parent != null) {
+            //noinspection ResultOfMethodCallIgnored
+            parent.mkdirs();
+        }
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            if (FrameCapturer.FORMAT_I420.equals(format)) {
+                while (i420.hasRemaining()) {
+                    outputStream.getChannel().write(i420);
+                }
+            } else {
+                encode(i420, width, height, format, quality, outputStream);
+            }
+        }
+        return null;
+    }
+
+    /** Drops the scratch memory; it is reallocated by the next capture. */
+    void trim() {
+        nv21 = null;
+        memoryOutput = new ByteArrayOutputStream();
+        codecs.trim();
+    }
+
+    private void encode(ByteBuffer i420, int width, int height, String format, int quality,
+                        OutputStream outputStream) {
+        switch (format) {
+            case FrameCapturer.FORMAT_PNG:
+            case FrameCapturer.FORMAT_WEBP:
+                ByteBuffer rgba = DirectBufferPool.acquire(width * height * 4);
+                try {
+                    rgba.order(ByteOrder.BIG_ENDIAN);
+                    YuvConversions.i420ToArgb(i420, width, height, rgba.asIntBuffer(), true);
+                    codecs.compressRgba(rgba, width, height, FrameCapturer.FORMAT_PNG.equals(format),
+                            quality, outputStream);
+                } finally {
+                    DirectBufferPool.release(rgba);
+                }
+                break;
+            case FrameCapturer.FORMAT_JPEG:
+                int size = YuvConversions.i420Size(width, height);
+                ByteBuffer nv21Buffer = DirectBufferPool.acquire(size);
+                try {
+                    codecs.i420ToNv21(i420, width, height, nv21Buffer);
+                    nv21Buffer.rewind();
+                    // YuvImage needs an array, which a direct buffer does not expose.
+                    if (nv21 == null || nv21.length != size) {
+                        nv21 = new byte[size];
+                    }
+                    nv21Buffer.get(nv21);
+                } finally {
+                    DirectBufferPool.release(nv21Buffer);
+                }
+                codecs.compressNv21(nv21, width, height, quality, outputStream);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported format " + format);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.cloudwebrtc.webrtc.record;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSink;
+import org.webrtc.VideoTrack;
+import org.webrtc.YuvHelper;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * A persistent sink on a video track that hands frames to consumers at a
+ * throttled rate, for on-device analysis. Frames are scaled, rotated and
+ * converted on the tap's own thread into a small pool of reusable direct
+ * buffers. A frame arriving while the previous one is still being converted,
+ * or while every pooled buffer is held by a consumer, is dropped rather than
+ * queued, so a slow consumer only lowers the delivered rate.
+ *
+ * <p>Frames go to native consumers registered with
+ * {@link #addConsumer(String, Consumer)} and, when enabled, to Dart over the
+ * binary message channel "FlutterWebRTC/frameTap&lt;trackId&gt;" as a 24 byte
+ * big-endian header (width, height, format, padding, timestamp in ns)
+ * followed by the pixels.
+ */
+public class FrameTap implements VideoSink {
+    private static final String TAG = "FrameTap";
+    private static final int HEADER_SIZE = 24;
+    public static final int FORMAT_I420 = 0;
+    public static final int FORMAT_RGBA = 1;
+
+    /** Receives frames on the tap thread; must call {@link Frame#release()} when done. */
+    public interface Consumer {
+        void onFrame(Frame frame);
+    }
+
+    /** A pooled frame, valid until released by every consumer. */
+    public static final class Frame {
+        private final FrameTap owner;
+        private final AtomicInteger refCount = new AtomicInteger();
+        private final Runnable sendToDart = this::sendToDart;
+        private ByteBuffer message;
+        private ByteBuffer data;
+        private IntBuffer pixels;
+        private int width;
+        private int height;
+        private long timestampNs;
+
+        private Frame(FrameTap owner) {
+            this.owner = owner;
+        }
+
+        /** Packed I420 planes or RGBA pixels, starting at position 0. */
+        public ByteBuffer getData() { return data; }
+
+        public int getWidth() { return width; }
+
+        public int getHeight() { return height; }
+
+        public int getFormat() { return owner.format; }
+
+        public long getTimestampNs() { return timestampNs; }
+
+        /** Keeps the frame beyond onFrame; balance with another release(). */
+        public void retain() {
+            refCount.incrementAndGet();
+        }
+
+        public void release() {
+            if (refCount.decrementAndGet() == 0) {
+                owner.recycle(this);
+            }
+        }
+
+        /** Swaps the buffer for a larger pooled one only when the geometry grows. */
+        private void ensureCapacity(int size) {
+            if (message == null || message.capacity() < HEADER_SIZE + size) {
+                freeBuffer();
+                message = DirectBufferPool.acquire(HEADER_SIZE + size);
+                message.clear();
+                message.position(HEADER_SIZE);
+                data = message.slice();
+                pixels = data.asIntBuffer();
+                message.clear();
+            }
+        }
+
+        private void freeBuffer() {
+            if (message != null) {
+                DirectBufferPool.release(message);
+                message = null;
+                data = null;
+                pixels = null;
+            }
+        }
+
+        private void sendToDart() {
+            message.putInt(0, width);
+            message.putInt(4, height);
+            message.putInt(8, owner.format);
+            message.putInt(12, 0);
+            message.putLong(16, timestampNs);
+            // The messenger sends the bytes before position() and copies them synchronously.
+            message.position(HEADER_SIZE + owner.frameSize(width, height));
+            owner.messenger.send(owner.channelName, message);
+            message.clear();
+            release();
+        }
+    }
+
+    /**
+     * Read without locking on the frame path; updates copy the array under
+     * the map's monitor (Map.compute needs API 24).
+     */
+    private static final Map<String, Consumer[]> consumers = new ConcurrentHashMap<>();
+
+    /** Registers a native consumer for the tap on trackId, whether or not it is running yet. */
+    public static void addConsumer(String trackId, Consumer consumer) {
+        synchronized (consumers) {
+            Consumer[] current = consumers.get(trackId);
+            if (current == null) {
+                consumers.put(trackId, new Consumer[] {consumer});
+                return;
+            }
+            Consumer[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = consumer;
+            consumers.put(trackId, updated);
+        }
+    }
+
+    public static void removeConsumer(String trackId, Consumer consumer) {
+        synchronized (consumers) {
+            Consumer[] current = consumers.get(trackId);
+            int index = current != null ? Arrays.asList(current).indexOf(consumer) : -1;
+            if (index < 0) {
+                return;
+            }
+            if (current.length == 1) {
+                consumers.remove(trackId);
+                return;
+            }
+            Consumer[] updated = new Consumer[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            consumers.put(trackId, updated);
+        }
+    }
+
+    private final VideoTrack videoTrack;
+    private final String trackId;
+    private final BinaryMessenger messenger;
+    private final String channelName;
+    private final boolean toDart;
+    private final int format;
+    private final int maxDimension;
+    private final long minFrameIntervalNs;
+    private final HandlerThread tapThread;
+    private final Handler tapHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ArrayDeque<Frame> freeFrames = new ArrayDeque<>();
+    private final AtomicBoolean busy = new AtomicBoolean(false);
+    private final Runnable convertRunnable = this::convert;
+    private volatile boolean running = true;
+    // Handed from the capture thread to the tap thread while busy is set.
+    private VideoFrame pendingFrame;
+    private Frame pendingOutput;
+    // Only touched on the capture thread.
+    private long nextFrameTimestampNs = 0;
+    // Only touched on the tap thread; the I420 scratch buffer for RGBA output.
+    private ByteBuffer i420Scratch;
+
+    /**
+     * @param options "maxFps" (0 = every frame), "maxDimension" (longest side, 0 = frame size),
+     *                "format" ("i420" or "rgba"), "bufferCount" and "toDart"
+     */
+    public FrameTap(VideoTrack videoTrack, String trackId, BinaryMessenger messenger,
+                    @Nullable Map<String, Object> options) {
+        if (options == null) {
+            options = Collections.emptyMap();
+        }
+        this.videoTrack = videoTrack;
+        this.trackId = trackId;
+        this.messenger = messenger;
+        channelName = "FlutterWebRTC/frameTap" + trackId;
+        toDart = !Boolean.FALSE.equals(options.get("toDart"));
+        format = "i420".equals(RecorderOptions.getString(options, "format", "rgba")) ? FORMAT_I420 : FORMAT_RGBA;
+        maxDimension = RecorderOptions.getInt(options, "maxDimension", 0);
+        int maxFps = RecorderOptions.getInt(options, "maxFps", 5);
+        minFrameIntervalNs = maxFps > 0 ? 1_000_000_000L / maxFps : 0;
+        int bufferCount = Math.max(1, RecorderOptions.getInt(options, "bufferCount", 2));
+        for (int i = 0; i < bufferCount; i++) {
+            freeFrames.add(new Frame(this));
+        }
+        tapThread = new HandlerThread(TAG);
+        tapThread.start();
+        tapHandler = new Handler(tapThread.getLooper());
+        videoTrack.addSink(this);
+    }
+
+    public void stop() {
+        running = false;
+        videoTrack.removeSink(this);
+        tapHandler.post(() -> {
+            if (i420Scratch != null) {
+                DirectBufferPool.release(i420Scratch);
+                i420Scratch = null;
+            }
+            synchronized (freeFrames) {
+                for (Frame frame : freeFrames) {
+                    frame.freeBuffer();
+                }
+                freeFrames.clear();
+            }
+            tapThread.quitSafely();
+        });
+    }
+
+    @Override
+    public void onFrame(VideoFrame frame) {
+        if (!running || shouldDropFrame(frame.getTimestampNs())) {
+            return;
+        }
+        if (!busy.compareAndSet(false, true)) {
+            return;
+        }
+        Frame output;
+        synchronized (freeFrames) {
+            output = freeFrames.poll();
+        }
+        if (output == null) {
+            busy.set(false);
+            return;
+        }
+        frame.retain();
+        pendingFrame = frame;
+        pendingOutput = output;
+        tapHandler.post(convertRunnable);
+    }
+
+    /** Same cadence rule as the recorder: a quarter interval of slack absorbs jitter. */
+    private boolean shouldDropFrame(long timestampNs) {
+        if (minFrameIntervalNs == 0) {
+            return false;
+        }
+        if (timestampNs < nextFrameTimestampNs - minFrameIntervalNs / 4) {
+            return true;
+        }
+        nextFrameTimestampNs += minFrameIntervalNs;
+        if (nextFrameTimestampNs < timestampNs) {
+            nextFrameTimestampNs = timestampNs + minFrameIntervalNs;
+        }
+        return false;
+    }
+
+    private void convert() {
+        VideoFrame frame = pendingFrame;
+        Frame output = pendingOutput;
+        pendingFrame = null;
+        pendingOutput = null;
+        try {
+            convert(frame, output);
+        } finally {
+            // Frames arriving until here were dropped.
+            busy.set(false);
+        }
+    }
+
+    private void convert(VideoFrame frame, Frame output) {
+        try {
+            if (!running) {
+                recycle(output);
+                return;
+            }
+            VideoFrame.Buffer buffer = frame.getBuffer();
+            int srcWidth = buffer.getWidth();
+            int srcHeight = buffer.getHeight();
+            int longest = Math.max(srcWidth, srcHeight);
+            VideoFrame.I420Buffer i420Buffer;
+            if (maxDimension > 0 && longest > maxDimension) {
+                int scaledWidth = Math.max(2, (int) ((long) srcWidth * maxDimension / longest) & ~1);
+                int scaledHeight = Math.max(2, (int) ((long) srcHeight * maxDimension / longest) & ~1);
+                VideoFrame.Buffer scaled = buffer.cropAndScale(0, 0, srcWidth, srcHeight, scaledWidth, scaledHeight);
+                i420Buffer = scaled.toI420();
+                scaled.release();
+            } else {
+                i420Buffer = buffer.toI420();
+            }
+            int rotation = frame.getRotation();
+            int width = rotation % 180 == 0 ? i420Buffer.getWidth() : i420Buffer.getHeight();
+            int height = rotation % 180 == 0 ? i420Buffer.getHeight() : i420Buffer.getWidth();
+            output.ensureCapacity(frameSize(width, height));
+            ByteBuffer i420;
+            if (format == FORMAT_I420) {
+                i420 = output.data;
+            } else {
+                int size = YuvConversions.i420Size(width, height);
+                if (i420Scratch == null || i420Scratch.capacity() < size) {
+                    if (i420Scratch != null) {
+                        DirectBufferPool.release(i420Scratch);
+                    }
+                    i420Scratch = DirectBufferPool.acquire(size);
+                }
+                i420 = i420Scratch;
+            }
+            YuvHelper.I420Rotate(
+                    i420Buffer.getDataY(), i420Buffer.getStrideY(),
+                    i420Buffer.getDataU(), i420Buffer.getStrideU(),
+                    i420Buffer.getDataV(), i420Buffer.getStrideV(),
+                    i420, i420Buffer.getWidth(), i420Buffer.getHeight(), rotation);
+            // YuvHelper moves the position while slicing out the planes.
+            i420.rewind();
+            i420Buffer.release();
+            if (format == FORMAT_RGBA) {
+                YuvConversions.i420ToArgb(i420, width, height, output.pixels, true);
+            }
+            output.width = width;
+            output.height = height;
+            output.timestampNs = frame.getTimestampNs();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Frame conversion failed", e);
+            recycle(output);
+            return;
+        } finally {
+            frame.release();
+        }
+        deliver(output);
+    }
+
+    private void deliver(Frame frame) {
+        Consumer[] targets = consumers.get(trackId);
+        int count = (targets != null ? targets.length : 0) + (toDart ? 1 : 0);
+        if (count == 0) {
+            recycle(frame);
+            return;
+        }
+        frame.refCount.set(count);
+        if (toDart) {
+            mainHandler.post(frame.sendToDart);
+        }
+        if (targets != null) {
+            for (Consumer consumer : targets) {
+                try {
+                    consumer.onFrame(frame);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Frame consumer failed", e);
+                    frame.release();
+                }
+            }
+        }
+    }
+
+    private void recycle(Frame frame) {
+        synchronized (freeFrames) {
+            if (running) {
+                freeFrames.add(frame);
+            } else {
+                // Released by a consumer after stop().
+                frame.freeBuffer();
+            }
+        }
+    }
+
+    private int frameSize(int width, int height) {
+        return format == FORMAT_I420 ? YuvConversions.i420Size(width, height) : width * height * 4;
+    }
+}
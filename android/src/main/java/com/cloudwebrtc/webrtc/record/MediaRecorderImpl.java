@@ -1,29 +1,109 @@
 package com.cloudwebrtc.webrtc.record;
 
 import androidx.annotation.Nullable;
+import android.media.MediaMuxer;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import com.cloudwebrtc.webrtc.utils.AnyThreadSink;
+import com.cloudwebrtc.webrtc.utils.ConstraintsArray;
+import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
 import com.cloudwebrtc.webrtc.utils.EglUtils;
 
 import org.webrtc.VideoTrack;
 
 import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-public class MediaRecorderImpl {
+import io.flutter.plugin.common.EventChannel;
+
+public class MediaRecorderImpl implements EventChannel.StreamHandler {
 
     private final Integer id;
     private final VideoTrack videoTrack;
     private final AudioSamplesInterceptor audioInterceptor;
+    private final RecorderOptions options;
     private VideoFileRenderer videoFileRenderer;
+    private MuxerWriter audioOnlyWriter;
+    private AudioEncoder audioOnlyEncoder;
+    private String mimeType = "video/mp4";
     private boolean isRunning = false;
     private File recordFile;
+    @Nullable
+    private final EventChannel eventChannel;
+    private volatile EventChannel.EventSink eventSink;
 
-    public MediaRecorderImpl(Integer id, @Nullable VideoTrack videoTrack, @Nullable AudioSamplesInterceptor audioInterceptor) {
+    public MediaRecorderImpl(Integer id, @Nullable VideoTrack videoTrack, @Nullable AudioSamplesInterceptor audioInterceptor,
+                             RecorderOptions options, @Nullable EventChannel eventChannel) {
         this.id = id;
         this.videoTrack = videoTrack;
         this.audioInterceptor = audioInterceptor;
+        this.options = options;
+        this.eventChannel = eventChannel;
+        if (eventChannel != null) {
+            eventChannel.setStreamHandler(this);
+        }
+    }
+
+    @Override
+    public void onListen(Object o, EventChannel.EventSink sink) {
+        eventSink = new AnyThreadSink(sink);
+    }
+
+    @Override
+    public void onCancel(Object o) {
+        eventSink = null;
     }
 
+    private void sendEvent(ConstraintsMap params) {
+        EventChannel.EventSink sink = eventSink;
+        if (sink != null) {
+            sink.success(params.toMap());
+        }
+    }
+
+    /** Forwards segment events; the channel is closed once the last file is finalized. */
+    private final MuxerWriter.Listener muxerListener = new MuxerWriter.Listener() {
+        @Override
+        public void onSegmentFinished(String path, int index, long durationMs, long sizeBytes) {
+            ConstraintsMap params = new ConstraintsMap();
+            params.putString("event", "onSegmentFinished");
+            params.putString("path", path);
+            params.putInt("index", index);
+            params.putLong("durationMs", durationMs);
+            params.putLong("sizeBytes", sizeBytes);
+            sendEvent(params);
+        }
+
+        @Override
+        public void onSegmentDeleted(String path, int index) {
+            ConstraintsMap params = new ConstraintsMap();
+            params.putString("event", "onSegmentDeleted");
+            params.putString("path", path);
+            params.putInt("index", index);
+            sendEvent(params);
+        }
+
+        @Override
+        public void onFinished(List<String> paths) {
+            ConstraintsArray files = new ConstraintsArray();
+            for (String path : paths) {
+                files.pushString(path);
+            }
+            ConstraintsMap params = new ConstraintsMap();
+            params.putString("event", "onRecordingFinished");
+            params.putArray("paths", files.toArrayList());
+            sendEvent(params);
+            if (eventChannel != null) {
+                // Posted behind the event, which AnyThreadSink also delivers on the main thread.
+                new Handler(Looper.getMainLooper()).post(() -> eventChannel.setStreamHandler(null));
+            }
+        }
+    };
+
     public void startRecording(File file) throws Exception {
         recordFile = file;
         if (isRunning)
@@ -35,31 +115,56 @@ public class MediaRecorderImpl {
             videoFileRenderer = new VideoFileRenderer(
                 file.getAbsolutePath(),
                 EglUtils.getRootEglBaseContext(),
-                audioInterceptor != null
+                audioInterceptor != null,
+                options,
+                muxerListener
             );
             videoTrack.addSink(videoFileRenderer);
             if (audioInterceptor != null)
                 audioInterceptor.attachCallback(id, videoFileRenderer);
+        } else if (audioInterceptor != null) {
+            String audioMimeType = options.resolveAudioMimeType(true);
+            int outputFormat = RecorderOptions.muxerOutputFormat(audioMimeType);
+            mimeType = outputFormat == MediaMuxer.OutputFormat.MUXER_OUTPUT_WEBM ? "audio/webm" : "audio/mp4";
+            audioOnlyWriter = new MuxerWriter(file.getAbsolutePath(), 1, outputFormat, options, muxerListener);
+            audioOnlyEncoder = new AudioEncoder(audioOnlyWriter, audioMimeType, options.audioBitrate);
+            audioInterceptor.attachCallback(id, audioOnlyEncoder);
         } else {
             Log.e(TAG, "Video track is null");
-            if (audioInterceptor != null) {
-                //TODO(rostopira): audio only recording
-                throw new Exception("Audio-only recording not implemented yet");
-            }
         }
     }
 
-    public File getRecordFile() { return recordFile; }
+    /** The recorded file, or null when it is split into segments, which are reported as events. */
+    @Nullable
+    public File getRecordFile() { return options.isSegmented() ? null : recordFile; }
+
+    /** "video/mp4", or "audio/mp4" / "audio/webm" for audio-only recordings. */
+    public String getMimeType() { return mimeType; }
+
+    /** Frame queue counters of the video pipeline and audio encoder cost. */
+    public Map<String, Object> getStats() {
+        if (videoFileRenderer != null) {
+            return videoFileRenderer.getStats();
+        }
+        return audioOnlyEncoder != null ? audioOnlyEncoder.getStats() : new HashMap<>();
+    }
 
     public void stopRecording() {
         isRunning = false;
         if (audioInterceptor != null)
             audioInterceptor.detachCallback(id);
         if (videoTrack != null && videoFileRenderer != null) {
+            videoFileRenderer.stopAcceptingFrames();
             videoTrack.removeSink(videoFileRenderer);
             videoFileRenderer.release();
             videoFileRenderer = null;
         }
+        if (audioOnlyEncoder != null) {
+            audioOnlyEncoder.stop();
+            audioOnlyWriter.stop();
+            audioOnlyEncoder = null;
+            audioOnlyWriter = null;
+        }
     }
 
     private static final String TAG = "MediaRecorderImpl";
@@ -0,0 +1,461 @@
+package com.cloudwebrtc.webrtc.record;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Owns the MediaMuxer of a recording and performs every muxer call on its own
+ * thread, so encoder callbacks never block on file I/O. Each encoder hands its
+ * output buffers over together with the codec, and the writer returns them to
+ * the codec once written. Samples produced before every track's format is
+ * known are copied and held until the muxer starts. If the held samples
+ * exceed MAX_PENDING_BYTES, or a track's format is still missing after
+ * START_TIMEOUT_MS, the muxer starts with the tracks it has and the others
+ * are left out of the recording.
+ *
+ * <p>All tracks are timestamped on the {@link System#nanoTime()} clock and
+ * rebased to the start of the current file, so their relative offsets are
+ * kept in the file.
+ *
+ * <p>In segmented mode the recording is split into numbered files, each
+ * starting at a video keyframe (any audio sample for audio-only recordings),
+ * so every finished segment is playable on its own and a crash loses at most
+ * the current one. With a ring buffer the oldest segments are deleted once
+ * the newer ones cover the requested duration.
+ */
+class MuxerWriter {
+    private static final String TAG = "MuxerWriter";
+    private static final long STOP_TIMEOUT_MS = 2000;
+    private static final long START_TIMEOUT_MS = 3000;
+    private static final long MAX_PENDING_BYTES = 8L * 1024 * 1024;
+
+    /** Called on the writer thread. */
+    interface Listener {
+        void onSegmentFinished(String path, int index, long durationMs, long sizeBytes);
+
+        void onSegmentDeleted(String path, int index);
+
+        /** The recording is complete; paths are the files left on disk, oldest first. */
+        void onFinished(List<String> paths);
+    }
+
+    /** One muxer track, fed by a single encoder. */
+    static final class Track {
+        private final MediaCodec codec;
+        private MediaFormat format;
+        private boolean isVideo = false;
+        private int index = -1;
+        private boolean ended = false;
+        private long lastPresentationTimeUs = -1;
+
+        private Track(MediaCodec codec) {
+            this.codec = codec;
+        }
+    }
+
+    private static final class PendingSample {
+        final Track track;
+        final ByteBuffer data;
+        final MediaCodec.BufferInfo info;
+
+        PendingSample(Track track, ByteBuffer data, MediaCodec.BufferInfo info) {
+            this.track = track;
+            this.data = data;
+            this.info = info;
+        }
+    }
+
+    private static final class Segment {
+        final String path;
+        final int index;
+        final long durationUs;
+
+        Segment(String path, int index, long durationUs) {
+            this.path = path;
+            this.index = index;
+            this.durationUs = durationUs;
+        }
+    }
+
+    private final HandlerThread writerThread;
+    private final Handler handler;
+    private final String path;
+    private final int outputFormat;
+    private final int expectedTracks;
+    private final long segmentDurationUs;
+    private final long segmentMaxBytes;
+    private final long ringBufferDurationUs;
+    @Nullable
+    private final Listener listener;
+    // Only touched on the writer thread.
+    @Nullable
+    private MediaMuxer muxer;
+    private final ArrayList<Track> tracks = new ArrayList<>();
+    private final ArrayDeque<PendingSample> pendingSamples = new ArrayDeque<>();
+    private long pendingBytes = 0;
+    private final Runnable startTimeout = () -> {
+        Log.w(TAG, "Track format missing after " + START_TIMEOUT_MS + " ms");
+        start();
+    };
+    private final ArrayDeque<Segment> finishedSegments = new ArrayDeque<>();
+    private long finishedDurationUs = 0;
+    private int segmentIndex = 0;
+    private String segmentPath;
+    private long segmentStartUs;
+    private long segmentEndUs;
+    private long segmentBytes = 0;
+    private boolean syncFrameRequested = false;
+    private int tracksWithFormat = 0;
+    private boolean started = false;
+    private boolean stopRequested = false;
+    private boolean finished = false;
+
+    MuxerWriter(String path, int expectedTracks, int outputFormat, RecorderOptions options,
+                @Nullable Listener listener) throws IOException {
+        this.path = path;
+        this.expectedTracks = expectedTracks;
+        this.outputFormat = outputFormat;
+        this.listener = listener;
+        if (options.isSegmented()) {
+            segmentDurationUs = options.segmentDurationMs * 1000;
+            segmentMaxBytes = options.segmentMaxBytes;
+            ringBufferDurationUs = options.ringBufferDurationMs * 1000;
+        } else {
+            segmentDurationUs = 0;
+            segmentMaxBytes = 0;
+            ringBufferDurationUs = 0;
+        }
+        segmentStartUs = System.nanoTime() / 1000;
+        segmentEndUs = segmentStartUs;
+        segmentPath = segmentPath(0);
+        muxer = new MediaMuxer(segmentPath, outputFormat);
+        writerThread = new HandlerThread(TAG);
+        writerThread.start();
+        handler = new Handler(writerThread.getLooper());
+    }
+
+    Track addTrack(MediaCodec codec) {
+        Track track = new Track(codec);
+        handler.post(() -> tracks.add(track));
+        return track;
+    }
+
+    /** Called from the encoder's onOutputFormatChanged. */
+    void setFormat(Track track, MediaFormat format) {
+        handler.post(() -> {
+            if (started) {
+                Log.w(TAG, "Ignoring format change after start: " + format);
+                return;
+            }
+            track.format = format;
+            String mimeType = format.getString(MediaFormat.KEY_MIME);
+            track.isVideo = mimeType != null && mimeType.startsWith("video/");
+            track.index = muxer.addTrack(format);
+            if (++tracksWithFormat == expectedTracks) {
+                start();
+            }
+        });
+    }
+
+    /** Starts the muxer with the tracks that have a format and writes the held samples. */
+    private void start() {
+        handler.removeCallbacks(startTimeout);
+        if (started || muxer == null) {
+            return;
+        }
+        if (tracksWithFormat < expectedTracks) {
+            Log.w(TAG, "Starting with " + tracksWithFormat + " of " + expectedTracks + " tracks");
+        }
+        try {
+            muxer.start();
+            started = true;
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "muxer start failed", e);
+        }
+        while (!pendingSamples.isEmpty()) {
+            PendingSample sample = pendingSamples.poll();
+            if (started) {
+                write(sample.track, sample.data, sample.info);
+            }
+            DirectBufferPool.release(sample.data);
+        }
+        pendingBytes = 0;
+        if (!started) {
+            finish();
+        }
+    }
+
+    /**
+     * Called from the encoder's onOutputBufferAvailable. The buffer is written
+     * and released on the writer thread; an end-of-stream buffer also stops
+     * and releases the codec.
+     */
+    void writeSample(Track track, int bufferIndex, MediaCodec.BufferInfo bufferInfo) {
+        final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        info.set(bufferInfo.offset, bufferInfo.size, bufferInfo.presentationTimeUs, bufferInfo.flags);
+        handler.post(() -> {
+            if (track.ended) {
+                return;
+            }
+            try {
+                ByteBuffer data = track.codec.getOutputBuffer(bufferIndex);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                    // Already part of the track format.
+                    info.size = 0;
+                }
+                if (data != null && info.size > 0) {
+                    data.position(info.offset);
+                    data.limit(info.offset + info.size);
+                    if (started) {
+                        write(track, data, info);
+                    } else {
+                        ByteBuffer copy = DirectBufferPool.acquire(info.size);
+                        copy.put(data);
+                        copy.flip();
+                        info.offset = 0;
+                        if (pendingSamples.isEmpty()) {
+                            handler.postDelayed(startTimeout, START_TIMEOUT_MS);
+                        }
+                        pendingSamples.add(new PendingSample(track, copy, info));
+                        pendingBytes += info.size;
+                    }
+                }
+                track.codec.releaseOutputBuffer(bufferIndex, false);
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "writeSample failed", e);
+            }
+            if (!started && pendingBytes > MAX_PENDING_BYTES) {
+                Log.w(TAG, "Held samples exceed " + MAX_PENDING_BYTES + " bytes");
+                start();
+            }
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                endTrack(track);
+                maybeFinish();
+            }
+        });
+    }
+
+    /**
+     * Finalizes the file once every track has delivered end-of-stream, or
+     * after a timeout for encoders that never do.
+     */
+    void stop() {
+        handler.post(() -> {
+            stopRequested = true;
+            maybeFinish();
+        });
+        handler.postDelayed(this::finish, STOP_TIMEOUT_MS);
+    }
+
+    private void write(Track track, ByteBuffer data, MediaCodec.BufferInfo info) {
+        if (track.format == null) {
+            // Left out because the muxer started before its format arrived.
+            return;
+        }
+        if (isSegmentDue(info.presentationTimeUs)) {
+            if (isSyncSample(track, info)) {
+                rotate(info.presentationTimeUs);
+            } else {
+                requestSyncFrame();
+            }
+        }
+        if (muxer == null) {
+            return;
+        }
+        segmentEndUs = Math.max(segmentEndUs, info.presentationTimeUs);
+        // Frames captured just before the file started are pulled up to 0.
+        info.presentationTimeUs = Math.max(info.presentationTimeUs - segmentStartUs,
+                track.lastPresentationTimeUs + 1);
+        track.lastPresentationTimeUs = info.presentationTimeUs;
+        try {
+            muxer.writeSampleData(track.index, data, info);
+            segmentBytes += info.size;
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Log.e(TAG, "writeSampleData failed", e);
+        }
+    }
+
+    private boolean isSegmentDue(long presentationTimeUs) {
+        return (segmentDurationUs > 0 && presentationTimeUs - segmentStartUs >= segmentDurationUs)
+                || (segmentMaxBytes > 0 && segmentBytes >= segmentMaxBytes);
+    }
+
+    /** Segments start at a video keyframe, or at any sample when there is no video. */
+    private boolean isSyncSample(Track track, MediaCodec.BufferInfo info) {
+        if (track.isVideo) {
+            return (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+        }
+        for (Track t : tracks) {
+            if (t.isVideo) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Asks the video encoder for a keyframe instead of waiting for the next GOP. */
+    private void requestSyncFrame() {
+        if (syncFrameRequested) {
+            return;
+        }
+        syncFrameRequested = true;
+        for (Track track : tracks) {
+            if (track.isVideo && !track.ended) {
+                Bundle params = new Bundle();
+                params.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+                try {
+                    track.codec.setParameters(params);
+                } catch (IllegalStateException e) {
+                    Log.w(TAG, "Sync frame request failed", e);
+                }
+            }
+        }
+    }
+
+    private void rotate(long presentationTimeUs) {
+        finishSegment();
+        segmentIndex++;
+        segmentPath = segmentPath(segmentIndex);
+        segmentStartUs = presentationTimeUs;
+        segmentEndUs = presentationTimeUs;
+        segmentBytes = 0;
+        syncFrameRequested = false;
+        try {
+            muxer = new MediaMuxer(segmentPath, outputFormat);
+            for (Track track : tracks) {
+                if (track.format != null) {
+                    track.index = muxer.addTrack(track.format);
+                }
+                track.lastPresentationTimeUs = -1;
+            }
+            muxer.start();
+        } catch (IOException | IllegalStateException e) {
+            Log.e(TAG, "Failed to open segment " + segmentPath, e);
+            if (muxer != null) {
+                muxer.release();
+                muxer = null;
+            }
+        }
+    }
+
+    /** Finalizes the current file and, in ring buffer mode, deletes segments no longer needed. */
+    private void finishSegment() {
+        if (muxer == null) {
+            return;
+        }
+        boolean written = started;
+        if (started) {
+            try {
+                muxer.stop();
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "muxer stop failed", e);
+                written = false;
+            }
+        }
+        muxer.release();
+        muxer = null;
+        if (!written) {
+            return;
+        }
+        Segment segment = new Segment(segmentPath, segmentIndex, segmentEndUs - segmentStartUs);
+        finishedSegments.add(segment);
+        finishedDurationUs += segment.durationUs;
+        if (listener != null && isSegmented()) {
+            listener.onSegmentFinished(segment.path, segment.index, segment.durationUs / 1000,
+                    new File(segment.path).length());
+        }
+        while (ringBufferDurationUs > 0 && finishedSegments.size() > 1
+                && finishedDurationUs - finishedSegments.peek().durationUs >= ringBufferDurationUs) {
+            Segment oldest = finishedSegments.poll();
+            finishedDurationUs -= oldest.durationUs;
+            if (!new File(oldest.path).delete()) {
+                Log.w(TAG, "Failed to delete segment " + oldest.path);
+            }
+            if (listener != null) {
+                listener.onSegmentDeleted(oldest.path, oldest.index);
+            }
+        }
+    }
+
+    private boolean isSegmented() {
+        return segmentDurationUs > 0 || segmentMaxBytes > 0;
+    }
+
+    /** The requested path, or "name_001.ext", "name_002.ext", ... next to it when segmented. */
+    private String segmentPath(int index) {
+        if (!isSegmented()) {
+            return path;
+        }
+        int slash = path.lastIndexOf(File.separatorChar);
+        int dot = path.lastIndexOf('.');
+        if (dot <= slash) {
+            dot = path.length();
+        }
+        return String.format(Locale.US, "%s_%03d%s", path.substring(0, dot), index + 1, path.substring(dot));
+    }
+
+    private void endTrack(Track track) {
+        if (track.ended) {
+            return;
+        }
+        track.ended = true;
+        try {
+            track.codec.stop();
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "codec stop failed", e);
+        }
+        track.codec.release();
+    }
+
+    private void maybeFinish() {
+        if (!stopRequested) {
+            return;
+        }
+        for (Track track : tracks) {
+            if (!track.ended) {
+                return;
+            }
+        }
+        finish();
+    }
+
+    private void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        handler.removeCallbacks(startTimeout);
+        for (Track track : tracks) {
+            endTrack(track);
+        }
+        finishSegment();
+        for (PendingSample sample : pendingSamples) {
+            DirectBufferPool.release(sample.data);
+        }
+        pendingSamples.clear();
+        pendingBytes = 0;
+        if (listener != null) {
+            List<String> paths = new ArrayList<>();
+            for (Segment segment : finishedSegments) {
+                paths.add(segment.path);
+            }
+            listener.onFinished(paths);
+        }
+        writerThread.quitSafely();
+    }
+}
@@ -0,0 +1,253 @@
+package com.cloudwebrtc.webrtc.record;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecInfo.EncoderCapabilities;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Encoder settings for a recording, parsed from the "options" map of
+ * "startRecordToFile". Anything left out keeps the previous defaults
+ * (H.264, 6 Mbps, 30 fps, a keyframe every 5 seconds, source resolution).
+ */
+public class RecorderOptions {
+    private static final String TAG = "RecorderOptions";
+
+    static final String CODEC_H264 = "h264";
+    static final String CODEC_HEVC = "hevc";
+    static final String CODEC_AAC = "aac";
+    static final String CODEC_OPUS = "opus";
+    /** Opus encoding and Opus in WebM via MediaMuxer need Android 10. */
+    private static final int OPUS_MIN_SDK = 29;
+
+    /** What to do with a new frame when maxPendingFrames are already queued. */
+    enum FrameDropPolicy {
+        DROP_OLDEST,
+        DROP_NEWEST,
+        BLOCK
+    }
+
+    final String videoCodec;
+    /** One of the EncoderCapabilities.BITRATE_MODE_* values, or -1 for the codec default. */
+    final int bitrateMode;
+    final int videoBitrate;
+    final int frameRate;
+    final int keyFrameInterval;
+    /** Output size; 0 keeps the size of the first recorded frame. */
+    final int width;
+    final int height;
+    /**
+     * Upper bounds for downscaled recording; 0 means unbounded. Frames are
+     * scaled to fit while keeping their aspect ratio, and frames arriving
+     * faster than maxFrameRate are dropped before they are drawn.
+     */
+    final int maxWidth;
+    final int maxHeight;
+    final int maxFrameRate;
+    /** Frames retained and waiting for the render thread at most. */
+    final int maxPendingFrames;
+    final FrameDropPolicy frameDropPolicy;
+    final String audioCodec;
+    final int audioBitrate;
+    /**
+     * Segmented recording: the file is split at the first keyframe after
+     * segmentDurationMs or segmentMaxBytes, 0 meaning no limit. With
+     * ringBufferDurationMs only the newest segments covering that much are
+     * kept on disk.
+     */
+    final long segmentDurationMs;
+    final long segmentMaxBytes;
+    final long ringBufferDurationMs;
+
+    private RecorderOptions(Map<String, Object> options) {
+        videoCodec = getString(options, "videoCodec", CODEC_H264).toLowerCase();
+        bitrateMode = parseBitrateMode(getString(options, "bitrateMode", null));
+        videoBitrate = getInt(options, "videoBitrate", 6000000);
+        maxFrameRate = getInt(options, "maxFrameRate", 0);
+        frameRate = maxFrameRate > 0
+                ? Math.min(getInt(options, "frameRate", maxFrameRate), maxFrameRate)
+                : getInt(options, "frameRate", 30);
+        keyFrameInterval = getInt(options, "keyFrameInterval", 5);
+        width = getInt(options, "width", 0) & ~1;
+        height = getInt(options, "height", 0) & ~1;
+        maxWidth = getInt(options, "maxWidth", 0);
+        maxHeight = getInt(options, "maxHeight", 0);
+        maxPendingFrames = Math.max(1, getInt(options, "maxPendingFrames", 5));
+        frameDropPolicy = parseFrameDropPolicy(getString(options, "frameDropPolicy", null));
+        audioCodec = getString(options, "audioCodec", CODEC_AAC).toLowerCase();
+        audioBitrate = getInt(options, "audioBitrate", 64 * 1024);
+        ringBufferDurationMs = getLong(options, "ringBufferDurationMs", 0);
+        segmentMaxBytes = getLong(options, "segmentMaxBytes", 0);
+        // A ring buffer needs segments to drop; a quarter of it keeps the overshoot small.
+        segmentDurationMs = getLong(options, "segmentDurationMs",
+                ringBufferDurationMs > 0 && segmentMaxBytes == 0 ? Math.max(1000, ringBufferDurationMs / 4) : 0);
+    }
+
+    public static RecorderOptions fromMap(@Nullable Map<String, Object> options) {
+        return new RecorderOptions(options != null ? options : Collections.emptyMap());
+    }
+
+    boolean isSegmented() {
+        return segmentDurationMs > 0 || segmentMaxBytes > 0;
+    }
+
+    /**
+     * Returns the MIME type of the requested codec, or H.264 when the device
+     * has no encoder for it.
+     */
+    String resolveVideoMimeType() {
+        String mimeType = CODEC_HEVC.equals(videoCodec)
+                ? MediaFormat.MIMETYPE_VIDEO_HEVC : MediaFormat.MIMETYPE_VIDEO_AVC;
+        if (findEncoder(mimeType) == null) {
+            Log.w(TAG, "No encoder for " + mimeType + ", falling back to H.264");
+            mimeType = MediaFormat.MIMETYPE_VIDEO_AVC;
+        }
+        return mimeType;
+    }
+
+    /**
+     * Returns the audio MIME type to encode with. Opus is only used for
+     * audio-only recordings, which are muxed to WebM, and only where the
+     * device can encode it; everything else is AAC.
+     */
+    String resolveAudioMimeType(boolean audioOnly) {
+        if (CODEC_OPUS.equals(audioCodec)) {
+            if (audioOnly && Build.VERSION.SDK_INT >= OPUS_MIN_SDK
+                    && findEncoder(MediaFormat.MIMETYPE_AUDIO_OPUS) != null) {
+                return MediaFormat.MIMETYPE_AUDIO_OPUS;
+            }
+            Log.w(TAG, "Opus recording unsupported here, falling back to AAC");
+        }
+        return MediaFormat.MIMETYPE_AUDIO_AAC;
+    }
+
+    static int muxerOutputFormat(String audioMimeType) {
+        return MediaFormat.MIMETYPE_AUDIO_OPUS.equals(audioMimeType)
+                ? MediaMuxer.OutputFormat.MUXER_OUTPUT_WEBM
+                : MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4;
+    }
+
+    /**
+     * Returns the encoded size for frames of the given rotated size: the fixed
+     * width/height when set, otherwise the source size scaled down to fit
+     * maxWidth x maxHeight. Dimensions are rounded down to even values.
+     */
+    int[] outputSize(int sourceWidth, int sourceHeight) {
+        if (width > 0 && height > 0) {
+            return new int[] {width, height};
+        }
+        double scale = 1.0;
+        if (maxWidth > 0) {
+            scale = Math.min(scale, (double) maxWidth / sourceWidth);
+        }
+        if (maxHeight > 0) {
+            scale = Math.min(scale, (double) maxHeight / sourceHeight);
+        }
+        return new int[] {
+                Math.max(2, (int) (sourceWidth * scale) & ~1),
+                Math.max(2, (int) (sourceHeight * scale) & ~1)
+        };
+    }
+
+    /** Applies bitrate, frame rate, GOP and bitrate mode to a video format. */
+    void applyTo(MediaFormat format, String mimeType) {
+        format.setInteger(MediaFormat.KEY_BIT_RATE, videoBitrate);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, keyFrameInterval);
+        if (bitrateMode != -1) {
+            MediaCodecInfo info = findEncoder(mimeType);
+            EncoderCapabilities caps = info != null
+                    ? info.getCapabilitiesForType(mimeType).getEncoderCapabilities() : null;
+            if (caps != null && caps.isBitrateModeSupported(bitrateMode)) {
+                format.setInteger(MediaFormat.KEY_BITRATE_MODE, bitrateMode);
+            } else {
+                Log.w(TAG, "Bitrate mode " + bitrateMode + " unsupported, using encoder default");
+            }
+        }
+    }
+
+    /**
+     * Creates the encoder that findEncoder returns, which is the one whose
+     * capabilities applyTo checked; createEncoderByType may pick another.
+     */
+    static MediaCodec createEncoder(String mimeType) throws IOException {
+        MediaCodecInfo info = findEncoder(mimeType);
+        return info != null
+                ? MediaCodec.createByCodecName(info.getName())
+                : MediaCodec.createEncoderByType(mimeType);
+    }
+
+    @Nullable
+    static MediaCodecInfo findEncoder(String mimeType) {
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (!info.isEncoder()) {
+                continue;
+            }
+            for (String type : info.getSupportedTypes()) {
+                if (type.equalsIgnoreCase(mimeType)) {
+                    return info;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int parseBitrateMode(@Nullable String mode) {
+        if (mode == null) {
+            return -1;
+        }
+        switch (mode.toLowerCase()) {
+            case "cbr":
+                return EncoderCapabilities.BITRATE_MODE_CBR;
+            case "vbr":
+                return EncoderCapabilities.BITRATE_MODE_VBR;
+            case "cq":
+                return EncoderCapabilities.BITRATE_MODE_CQ;
+            default:
+                Log.w(TAG, "Unknown bitrate mode " + mode);
+                return -1;
+        }
+    }
+
+    private static FrameDropPolicy parseFrameDropPolicy(@Nullable String policy) {
+        if (policy == null) {
+            return FrameDropPolicy.DROP_OLDEST;
+        }
+        switch (policy) {
+            case "dropOldest":
+                return FrameDropPolicy.DROP_OLDEST;
+            case "dropNewest":
+                return FrameDropPolicy.DROP_NEWEST;
+            case "block":
+                return FrameDropPolicy.BLOCK;
+            default:
+                Log.w(TAG, "Unknown frame drop policy " + policy);
+                return FrameDropPolicy.DROP_OLDEST;
+        }
+    }
+
+    static String getString(Map<String, Object> options, String key, String fallback) {
+        Object value = options.get(key);
+        return value instanceof String ? (String) value : fallback;
+    }
+
+    static int getInt(Map<String, Object> options, String key, int fallback) {
+        Object value = options.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : fallback;
+    }
+
+    static long getLong(Map<String, Object> options, String key, long fallback) {
+        Object value = options.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : fallback;
+    }
+}
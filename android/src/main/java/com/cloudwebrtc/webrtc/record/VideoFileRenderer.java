@@ -6,9 +6,12 @@ import android.media.MediaFormat;
 import android.media.MediaMuxer;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Surface;
 
+import androidx.annotation.NonNull;
+
 import org.webrtc.EglBase;
 import org.webrtc.GlRectDrawer;
 import org.webrtc.VideoFrame;
@@ -18,281 +21,318 @@ import org.webrtc.audio.JavaAudioDeviceModule;
 import org.webrtc.audio.JavaAudioDeviceModule.SamplesReadyCallback;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
 
+/**
+ * Records a video track (and optionally audio) to an MP4 file, or to a series
+ * of them in segmented mode. Frames are
+ * drawn into the encoder's input surface on the render thread; both encoders
+ * run in MediaCodec asynchronous mode with callbacks on a codec thread, and
+ * their output is written by a {@link MuxerWriter} on its own thread, so the
+ * render thread never waits for the codec.
+ */
 class VideoFileRenderer implements VideoSink, SamplesReadyCallback {
     private static final String TAG = "VideoFileRenderer";
+    /** Longest a capturer waits for room under the BLOCK policy before the frame is dropped. */
+    private static final long MAX_BLOCK_MS = 1000;
     private final HandlerThread renderThread;
     private final Handler renderThreadHandler;
-    private final HandlerThread audioThread;
-    private final Handler audioThreadHandler;
+    private final HandlerThread codecThread;
+    private final Handler codecThreadHandler;
     private int outputFileWidth = -1;
     private int outputFileHeight = -1;
-    private ByteBuffer[] encoderOutputBuffers;
-    private ByteBuffer[] audioInputBuffers;
-    private ByteBuffer[] audioOutputBuffers;
     private EglBase eglBase;
     private EglBase.Context sharedContext;
     private VideoFrameDrawer frameDrawer;
+    private final RecorderOptions options;
+    /** Minimum spacing between recorded frames, 0 when every frame is kept. */
+    private final long minFrameIntervalNs;
+    private long nextFrameTimestampNs = 0;
+    /** Retained frames waiting for the render thread, bounded by maxPendingFrames. */
+    private final ArrayDeque<VideoFrame> pendingFrames = new ArrayDeque<>();
+    private final Runnable renderNextFrameRunnable = this::renderNextFrame;
+    private long queuedFrames = 0;
+    private long droppedFrames = 0;
+    private volatile long renderedFrames = 0;
 
-    // TODO: these ought to be configurable as well
-    private static final String MIME_TYPE = "video/avc";    // H.264 Advanced Video Coding
-    private static final int FRAME_RATE = 30;               // 30fps
-    private static final int IFRAME_INTERVAL = 5;           // 5 seconds between I-frames
-
-    private MediaMuxer mediaMuxer;
-    private MediaCodec encoder;
-    private MediaCodec.BufferInfo bufferInfo, audioBufferInfo;
-    private int trackIndex = -1;
-    private int audioTrackIndex;
-    private boolean isRunning = true;
+    private final MuxerWriter muxerWriter;
+    private final AudioEncoder audioEncoder;
+    private volatile MediaCodec encoder;
+    private MuxerWriter.Track videoTrack;
+    private volatile boolean isRunning = true;
     private GlRectDrawer drawer;
     private Surface surface;
-    private MediaCodec audioEncoder;
 
-    VideoFileRenderer(String outputFile, final EglBase.Context sharedContext, boolean withAudio) throws IOException {
+    VideoFileRenderer(String outputFile, final EglBase.Context sharedContext, boolean withAudio,
+                      RecorderOptions options, MuxerWriter.Listener listener) throws IOException {
+        this.options = options;
+        minFrameIntervalNs = options.maxFrameRate > 0 ? 1_000_000_000L / options.maxFrameRate : 0;
         renderThread = new HandlerThread(TAG + "RenderThread");
         renderThread.start();
         renderThreadHandler = new Handler(renderThread.getLooper());
-        if (withAudio) {
-            audioThread = new HandlerThread(TAG + "AudioThread");
-            audioThread.start();
-            audioThreadHandler = new Handler(audioThread.getLooper());
-        } else {
-            audioThread = null;
-            audioThreadHandler = null;
-        }
-        bufferInfo = new MediaCodec.BufferInfo();
+        codecThread = new HandlerThread(TAG + "CodecThread");
+        codecThread.start();
+        codecThreadHandler = new Handler(codecThread.getLooper());
         this.sharedContext = sharedContext;
 
-        // Create a MediaMuxer.  We can't add the video track and start() the muxer here,
-        // because our MediaFormat doesn't have the Magic Goodies.  These can only be
-        // obtained from the encoder after it has started processing data.
-        mediaMuxer = new MediaMuxer(outputFile,
-                MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
-
-        audioTrackIndex = withAudio ? -1 : 0;
+        // The muxer can only start once every encoder has reported its output
+        // format, so it is told how many tracks to wait for.
+        muxerWriter = new MuxerWriter(outputFile, withAudio ? 2 : 1,
+                MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4, options, listener);
+        audioEncoder = withAudio
+                ? new AudioEncoder(muxerWriter, options.resolveAudioMimeType(false), options.audioBitrate)
+                : null;
     }
 
+    /**
+     * Creates the encoder on the codec thread, so its callbacks are delivered
+     * there, then sets up EGL on the render thread. Frames drawn before that
+     * are dropped.
+     */
     private void initVideoEncoder() {
-        MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, outputFileWidth, outputFileHeight);
+        String mimeType = options.resolveVideoMimeType();
+        MediaFormat format = MediaFormat.createVideoFormat(mimeType, outputFileWidth, outputFileHeight);
 
         // Set some properties.  Failing to specify some of these can cause the MediaCodec
         // configure() call to throw an unhelpful exception.
         format.setInteger(MediaFormat.KEY_COLOR_FORMAT,
                 MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
-        format.setInteger(MediaFormat.KEY_BIT_RATE, 6000000);
-        format.setInteger(MediaFormat.KEY_FRAME_RATE, FRAME_RATE);
-        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, IFRAME_INTERVAL);
+        options.applyTo(format, mimeType);
 
-        // Create a MediaCodec encoder, and configure it with our format.  Get a Surface
-        // we can use for input and wrap it with a class that handles the EGL work.
-        try {
-            encoder = MediaCodec.createEncoderByType(MIME_TYPE);
-            encoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
-            renderThreadHandler.post(() -> {
-                eglBase = EglBase.create(sharedContext, EglBase.CONFIG_RECORDABLE);
-                surface = encoder.createInputSurface();
-                eglBase.createSurface(surface);
-                eglBase.makeCurrent();
-                drawer = new GlRectDrawer();
-            });
-        } catch (Exception e) {
-            Log.wtf(TAG, e);
-        }
+        codecThreadHandler.post(() -> {
+            if (!isRunning) {
+                return;
+            }
+            try {
+                MediaCodec codec = RecorderOptions.createEncoder(mimeType);
+                codec.setCallback(videoCallback);
+                codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+                final Surface inputSurface = codec.createInputSurface();
+                videoTrack = muxerWriter.addTrack(codec);
+                codec.start();
+                encoder = codec;
+                renderThreadHandler.post(() -> {
+                    surface = inputSurface;
+                    eglBase = EglBase.create(sharedContext, EglBase.CONFIG_RECORDABLE);
+                    eglBase.createSurface(surface);
+                    eglBase.makeCurrent();
+                    drawer = new GlRectDrawer();
+                });
+            } catch (Exception e) {
+                Log.wtf(TAG, e);
+            }
+        });
     }
 
     @Override
     public void onFrame(VideoFrame frame) {
-        frame.retain();
+        if (shouldDropFrame(frame.getTimestampNs())) {
+            return;
+        }
         if (outputFileWidth == -1) {
-            outputFileWidth = frame.getRotatedWidth();
-            outputFileHeight = frame.getRotatedHeight();
+            int[] size = options.outputSize(frame.getRotatedWidth(), frame.getRotatedHeight());
+            outputFileWidth = size[0];
+            outputFileHeight = size[1];
             initVideoEncoder();
         }
-        renderThreadHandler.post(() -> renderFrameOnRenderThread(frame));
+        if (!enqueueFrame(frame)) {
+            return;
+        }
+        renderThreadHandler.post(renderNextFrameRunnable);
+    }
+
+    /**
+     * Retains and queues a frame unless the queue is full, in which case the
+     * configured policy drops a frame or blocks the capturer until there is
+     * room, for at most MAX_BLOCK_MS.
+     */
+    private boolean enqueueFrame(VideoFrame frame) {
+        long deadlineMs = 0;
+        synchronized (pendingFrames) {
+            if (!isRunning) {
+                return false;
+            }
+            while (pendingFrames.size() >= options.maxPendingFrames) {
+                switch (options.frameDropPolicy) {
+                    case DROP_NEWEST:
+                        droppedFrames++;
+                        return false;
+                    case DROP_OLDEST:
+                        pendingFrames.poll().release();
+                        droppedFrames++;
+                        break;
+                    case BLOCK:
+                        long nowMs = SystemClock.elapsedRealtime();
+                        if (deadlineMs == 0) {
+                            deadlineMs = nowMs + MAX_BLOCK_MS;
+                        }
+                        if (!isRunning || nowMs >= deadlineMs) {
+                            droppedFrames++;
+                            return false;
+                        }
+                        try {
+                            pendingFrames.wait(deadlineMs - nowMs);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            droppedFrames++;
+                            return false;
+                        }
+                        break;
+                }
+            }
+            frame.retain();
+            pendingFrames.add(frame);
+            queuedFrames++;
+            return true;
+        }
+    }
+
+    private void renderNextFrame() {
+        VideoFrame frame;
+        synchronized (pendingFrames) {
+            frame = pendingFrames.poll();
+            pendingFrames.notifyAll();
+        }
+        if (frame != null) {
+            renderFrameOnRenderThread(frame);
+        }
+    }
+
+    /** Frame counters; "pending" is the number of frames currently retained in the queue. */
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (pendingFrames) {
+            stats.put("queuedFrames", queuedFrames);
+            stats.put("droppedFrames", droppedFrames);
+            stats.put("pendingFrames", pendingFrames.size());
+        }
+        stats.put("renderedFrames", renderedFrames);
+        if (audioEncoder != null) {
+            stats.putAll(audioEncoder.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Keeps frames on a maxFrameRate cadence. A quarter interval of slack
+     * absorbs capture jitter, so e.g. 30 fps halves cleanly to 15 fps.
+     */
+    private boolean shouldDropFrame(long timestampNs) {
+        if (minFrameIntervalNs == 0) {
+            return false;
+        }
+        if (timestampNs < nextFrameTimestampNs - minFrameIntervalNs / 4) {
+            return true;
+        }
+        nextFrameTimestampNs += minFrameIntervalNs;
+        if (nextFrameTimestampNs < timestampNs) {
+            nextFrameTimestampNs = timestampNs + minFrameIntervalNs;
+        }
+        return false;
     }
 
     private void renderFrameOnRenderThread(VideoFrame frame) {
+        if (eglBase == null) {
+            frame.release();
+            return;
+        }
         if (frameDrawer == null) {
             frameDrawer = new VideoFrameDrawer();
         }
+        // Drawing into the output-sized viewport scales the frame on the GPU.
         frameDrawer.drawFrame(frame, drawer, null, 0, 0, outputFileWidth, outputFileHeight);
+        long timestampNs = frame.getTimestampNs();
         frame.release();
-        drainEncoder();
-        eglBase.swapBuffers();
+        // Stamps the encoder input with the capture time, the clock audio is anchored to.
+        eglBase.swapBuffers(timestampNs);
+        renderedFrames++;
     }
 
     /**
-     * Release all resources. All already posted frames will be rendered first.
+     * Drops frames from now on and wakes a capturer blocked by the BLOCK
+     * policy. Call before removing the sink: removeSink waits for a running
+     * onFrame, which may be the one blocked.
      */
-    void release() {
+    void stopAcceptingFrames() {
         isRunning = false;
-        if (audioThreadHandler != null)
-            audioThreadHandler.post(() -> {
-                if (audioEncoder != null) {
-                    audioEncoder.stop();
-                    audioEncoder.release();
-                }
-                audioThread.quit();
-            });
+        synchronized (pendingFrames) {
+            pendingFrames.notifyAll();
+        }
+    }
+
+    /**
+     * Release all resources. All already posted frames will be rendered first;
+     * the encoders are then drained to end-of-stream and the file is finalized
+     * by the muxer writer.
+     */
+    void release() {
+        stopAcceptingFrames();
+        if (audioEncoder != null)
+            audioEncoder.stop();
         renderThreadHandler.post(() -> {
-            if (encoder != null) {
-                encoder.stop();
-                encoder.release();
+            MediaCodec codec = encoder;
+            if (codec != null) {
+                try {
+                    codec.signalEndOfInputStream();
+                } catch (IllegalStateException e) {
+                    Log.w(TAG, "signalEndOfInputStream failed", e);
+                }
+            }
+            if (frameDrawer != null) {
+                frameDrawer.release();
+            }
+            if (drawer != null) {
+                drawer.release();
+            }
+            if (eglBase != null) {
+                eglBase.release();
+            }
+            if (surface != null) {
+                surface.release();
             }
-            eglBase.release();
-            mediaMuxer.stop();
-            mediaMuxer.release();
             renderThread.quit();
         });
+        codecThreadHandler.post(() -> {
+            if (encoder == null) {
+                codecThread.quitSafely();
+            }
+        });
+        muxerWriter.stop();
     }
 
-    private boolean encoderStarted = false;
-    private volatile boolean muxerStarted = false;
-    private long videoFrameStart = 0;
-
-    private void drainEncoder() {
-        if (!encoderStarted) {
-            encoder.start();
-            encoderOutputBuffers = encoder.getOutputBuffers();
-            encoderStarted = true;
-            return;
+    private final MediaCodec.Callback videoCallback = new MediaCodec.Callback() {
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
+            // Input comes from the surface.
         }
-        while (true) {
-            int encoderStatus = encoder.dequeueOutputBuffer(bufferInfo, 10000);
-            if (encoderStatus == MediaCodec.INFO_TRY_AGAIN_LATER) {
-                break;
-            } else if (encoderStatus == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
-                // not expected for an encoder
-                encoderOutputBuffers = encoder.getOutputBuffers();
-                Log.e(TAG, "encoder output buffers changed");
-            } else if (encoderStatus == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
-                // not expected for an encoder
-                MediaFormat newFormat = encoder.getOutputFormat();
 
-                Log.e(TAG, "encoder output format changed: " + newFormat);
-                trackIndex = mediaMuxer.addTrack(newFormat);
-                if (audioTrackIndex != -1 && !muxerStarted) {
-                    mediaMuxer.start();
-                    muxerStarted = true;
-                }
-                if (!muxerStarted)
-                    break;
-            } else if (encoderStatus < 0) {
-                Log.e(TAG, "unexpected result fr om encoder.dequeueOutputBuffer: " + encoderStatus);
-            } else { // encoderStatus >= 0
-                try {
-                    ByteBuffer encodedData = encoderOutputBuffers[encoderStatus];
-                    if (encodedData == null) {
-                        Log.e(TAG, "encoderOutputBuffer " + encoderStatus + " was null");
-                        break;
-                    }
-                    // It's usually necessary to adjust the ByteBuffer values to match BufferInfo.
-                    encodedData.position(bufferInfo.offset);
-                    encodedData.limit(bufferInfo.offset + bufferInfo.size);
-                    if (videoFrameStart == 0 && bufferInfo.presentationTimeUs != 0) {
-                        videoFrameStart = bufferInfo.presentationTimeUs;
-                    }
-                    bufferInfo.presentationTimeUs -= videoFrameStart;
-                    if (muxerStarted)
-                        mediaMuxer.writeSampleData(trackIndex, encodedData, bufferInfo);
-                    isRunning = isRunning && (bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) == 0;
-                    encoder.releaseOutputBuffer(encoderStatus, false);
-                    if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
-                        break;
-                    }
-                } catch (Exception e) {
-                    Log.wtf(TAG, e);
-                    break;
-                }
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index,
+                                            @NonNull MediaCodec.BufferInfo info) {
+            muxerWriter.writeSample(videoTrack, index, info);
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                codecThread.quitSafely();
             }
         }
-    }
-
-    private long presTime = 0L;
 
-    private void drainAudio() {
-        if (audioBufferInfo == null)
-            audioBufferInfo = new MediaCodec.BufferInfo();
-        while (true) {
-            int encoderStatus = audioEncoder.dequeueOutputBuffer(audioBufferInfo, 10000);
-            if (encoderStatus == MediaCodec.INFO_TRY_AGAIN_LATER) {
-                break;
-            } else if (encoderStatus == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
-                // not expected for an encoder
-                audioOutputBuffers = audioEncoder.getOutputBuffers();
-                Log.w(TAG, "encoder output buffers changed");
-            } else if (encoderStatus == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
-                // not expected for an encoder
-                MediaFormat newFormat = audioEncoder.getOutputFormat();
+        @Override
+        public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
+            Log.e(TAG, "Video encoder error", e);
+        }
 
-                Log.w(TAG, "encoder output format changed: " + newFormat);
-                audioTrackIndex = mediaMuxer.addTrack(newFormat);
-                if (trackIndex != -1 && !muxerStarted) {
-                    mediaMuxer.start();
-                    muxerStarted = true;
-                }
-                if (!muxerStarted)
-                    break;
-            } else if (encoderStatus < 0) {
-                Log.e(TAG, "unexpected result fr om encoder.dequeueOutputBuffer: " + encoderStatus);
-            } else { // encoderStatus >= 0
-                try {
-                    ByteBuffer encodedData = audioOutputBuffers[encoderStatus];
-                    if (encodedData == null) {
-                        Log.e(TAG, "encoderOutputBuffer " + encoderStatus + " was null");
-                        break;
-                    }
-                    // It's usually necessary to adjust the ByteBuffer values to match BufferInfo.
-                    encodedData.position(audioBufferInfo.offset);
-                    encodedData.limit(audioBufferInfo.offset + audioBufferInfo.size);
-                    if (muxerStarted)
-                        mediaMuxer.writeSampleData(audioTrackIndex, encodedData, audioBufferInfo);
-                    isRunning = isRunning && (audioBufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) == 0;
-                    audioEncoder.releaseOutputBuffer(encoderStatus, false);
-                    if ((audioBufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
-                        break;
-                    }
-                } catch (Exception e) {
-                    Log.wtf(TAG, e);
-                    break;
-                }
-            }
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
+            muxerWriter.setFormat(videoTrack, format);
         }
-    }
+    };
 
     @Override
     public void onWebRtcAudioRecordSamplesReady(JavaAudioDeviceModule.AudioSamples audioSamples) {
-        if (!isRunning)
+        if (!isRunning || audioEncoder == null)
             return;
-        audioThreadHandler.post(() -> {
-            if (audioEncoder == null) try {
-                audioEncoder = MediaCodec.createEncoderByType("audio/mp4a-latm");
-                MediaFormat format = new MediaFormat();
-                format.setString(MediaFormat.KEY_MIME, "audio/mp4a-latm");
-                format.setInteger(MediaFormat.KEY_CHANNEL_COUNT, audioSamples.getChannelCount());
-                format.setInteger(MediaFormat.KEY_SAMPLE_RATE, audioSamples.getSampleRate());
-                format.setInteger(MediaFormat.KEY_BIT_RATE, 64 * 1024);
-                format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
-                audioEncoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
-                audioEncoder.start();
-                audioInputBuffers = audioEncoder.getInputBuffers();
-                audioOutputBuffers = audioEncoder.getOutputBuffers();
-            } catch (IOException exception) {
-                Log.wtf(TAG, exception);
-            }
-            int bufferIndex = audioEncoder.dequeueInputBuffer(0);
-            if (bufferIndex >= 0) {
-                ByteBuffer buffer = audioInputBuffers[bufferIndex];
-                buffer.clear();
-                byte[] data = audioSamples.getData();
-                buffer.put(data);
-                audioEncoder.queueInputBuffer(bufferIndex, 0, data.length, presTime, 0);
-                presTime += data.length * 125 / 12; // 1000000 microseconds / 48000hz / 2 bytes
-            }
-            drainAudio();
-        });
+        audioEncoder.onWebRtcAudioRecordSamplesReady(audioSamples);
     }
 
 }
@@ -0,0 +1,53 @@
+package com.cloudwebrtc.webrtc.record;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/** Helpers for packed I420 buffers: Y plane, then U, then V, without padding. */
+final class YuvConversions {
+    private YuvConversions() {}
+
+    static int chromaSize(int width, int height) {
+        return ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    static int i420Size(int width, int height) {
+        return width * height + chromaSize(width, height) * 2;
+    }
+
+    static ByteBuffer plane(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice();
+    }
+
+    /**
+     * Converts BT.601 limited range I420, as produced by WebRTC, to one int
+     * per pixel: 0xAARRGGBB, or 0xRRGGBBAA when rgba is set, which a
+     * big-endian IntBuffer stores as RGBA bytes.
+     */
+    static void i420ToArgb(ByteBuffer i420, int width, int height, IntBuffer dst, boolean rgba) {
+        int chromaWidth = (width + 1) / 2;
+        int uOffset = width * height;
+        int vOffset = uOffset + chromaSize(width, height);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int chroma = (row / 2) * chromaWidth + col / 2;
+                int y = Math.max(0, (i420.get(row * width + col) & 0xff) - 16) * 1192;
+                int u = (i420.get(uOffset + chroma) & 0xff) - 128;
+                int v = (i420.get(vOffset + chroma) & 0xff) - 128;
+                int r = clamp((y + 1634 * v) >> 10);
+                int g = clamp((y - 833 * v - 400 * u) >> 10);
+                int b = clamp((y + 2066 * u) >> 10);
+                dst.put(row * width + col, rgba
+                        ? (r << 24) | (g << 16) | (b << 8) | 0xff
+                        : 0xff000000 | (r << 16) | (g << 8) | b);
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+}
@@ -0,0 +1,57 @@
+package com.cloudwebrtc.webrtc.utils;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out stream, track and peer connection ids.
+ *
+ * <p>{@link Scheme#COUNTER} ids have the form {@code <prefix>-<n>}, where
+ * {@code <n>} is an atomic counter written as 16 hex digits. The prefix is
+ * random per instance, so ids do not clash with those of other plugin
+ * instances or with ids chosen by remote peers, and allocation needs neither
+ * SecureRandom nor a uniqueness check.
+ *
+ * <p>Ids are fixed width in both schemes. Channel names append the data
+ * channel id to the peer connection id without a delimiter, so a variable
+ * width id would let {@code "…-1" + 12} and {@code "…-11" + 2} collide.
+ */
+public class IdAllocator {
+    public enum Scheme {
+        /** Random prefix plus a counter; constant time. Opt-in. */
+        COUNTER,
+        /** {@link UUID#randomUUID()}; the default. */
+        RANDOM_UUID
+    }
+
+    private static final int COUNTER_DIGITS = 16;
+
+    private final Scheme scheme;
+    private final String prefix;
+    private final AtomicLong counter = new AtomicLong();
+
+    public IdAllocator() {
+        this(Scheme.RANDOM_UUID);
+    }
+
+    public IdAllocator(Scheme scheme) {
+        this(scheme, UUID.randomUUID().toString().substring(0, 8));
+    }
+
+    public IdAllocator(Scheme scheme, String prefix) {
+        this.scheme = scheme;
+        this.prefix = prefix + "-";
+    }
+
+    public String next() {
+        if (scheme == Scheme.RANDOM_UUID) {
+            return UUID.randomUUID().toString();
+        }
+        String n = Long.toHexString(counter.incrementAndGet());
+        StringBuilder id = new StringBuilder(prefix.length() + COUNTER_DIGITS).append(prefix);
+        for (int i = n.length(); i < COUNTER_DIGITS; i++) {
+            id.append('0');
+        }
+        return id.append(n).toString();
+    }
+}
@@ -0,0 +1,71 @@
+package com.cloudwebrtc.webrtc.utils;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+public class StatsUtils {
+
+    /**
+     * Serializes a standard {@link RTCStatsReport} into the
+     * {@code {"stats": [{id, type, timestamp, values}]}} shape returned by
+     * "getStats". Member values keep their native numeric types, and only
+     * entries matching {@code types} / {@code ids} (when given) are built.
+     */
+    public static Map<String, Object> statsReportToMap(RTCStatsReport report,
+                                                       @Nullable Collection<String> types,
+                                                       @Nullable Collection<String> ids) {
+        Map<String, RTCStats> statsMap = report.getStatsMap();
+        ArrayList<Object> stats = new ArrayList<>(statsMap.size());
+        for (RTCStats rtcStats : statsMap.values()) {
+            if ((types != null && !types.contains(rtcStats.getType()))
+                    || (ids != null && !ids.contains(rtcStats.getId()))) {
+                continue;
+            }
+            stats.add(statsToMap(rtcStats));
+        }
+        Map<String, Object> params = new HashMap<>(2);
+        params.put("stats", stats);
+        return params;
+    }
+
+    public static Map<String, Object> statsToMap(RTCStats rtcStats) {
+        Map<String, Object> members = rtcStats.getMembers();
+        Map<String, Object> values = new HashMap<>(members.size() * 4 / 3 + 1);
+        for (Map.Entry<String, Object> member : members.entrySet()) {
+            values.put(member.getKey(), toCodecValue(member.getValue()));
+        }
+        Map<String, Object> map = new HashMap<>(8);
+        map.put("id", rtcStats.getId());
+        map.put("type", rtcStats.getType());
+        map.put("timestamp", rtcStats.getTimestampUs() / 1000.0);
+        map.put("values", values);
+        return map;
+    }
+
+    /**
+     * uint64 members arrive as {@link BigInteger} and sequences as Java arrays,
+     * neither of which the standard message codec encodes compactly.
+     */
+    private static Object toCodecValue(Object value) {
+        if (value instanceof BigInteger) {
+            return ((BigInteger) value).longValue();
+        }
+        if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            ArrayList<Object> list = new ArrayList<>(array.length);
+            for (Object item : array) {
+                list.add(toCodecValue(item));
+            }
+            return list;
+        }
+        return value;
+    }
+}
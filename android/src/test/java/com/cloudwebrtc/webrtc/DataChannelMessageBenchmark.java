@@ -0,0 +1,55 @@
+package com.cloudwebrtc.webrtc;
+
+import com.cloudwebrtc.webrtc.utils.AllocationCounter;
+import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
+
+import org.junit.Test;
+import org.webrtc.DataChannel;
+
+import java.nio.ByteBuffer;
+
+import io.flutter.plugin.common.StandardMethodCodec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the heap allocated per received message by the event channel path
+ * (byte[] copy, ConstraintsMap and the codec envelope the event sink encodes)
+ * with the message channel frame. Both start from the direct buffer WebRTC
+ * hands to onMessage.
+ */
+public class DataChannelMessageBenchmark {
+    private static final int MESSAGES = 20000;
+
+    @Test
+    public void messageFrameAllocatesLessThanEvent() {
+        for (int size : new int[] {64, 1024, 16 * 1024}) {
+            ByteBuffer payload = ByteBuffer.allocateDirect(size);
+            long eventBytes = AllocationCounter.bytesPerRun(MESSAGES, () -> {
+                payload.rewind();
+                ConstraintsMap event = DataChannelObserver.messageEvent(1, new DataChannel.Buffer(payload, true));
+                StandardMethodCodec.INSTANCE.encodeSuccessEnvelope(event.toMap());
+            });
+            long frameBytes = AllocationCounter.bytesPerRun(MESSAGES, () -> {
+                payload.rewind();
+                DataChannelObserver.messageFrame(new DataChannel.Buffer(payload, true));
+            });
+            System.out.println("DataChannel receive, " + size + " B payload: event channel "
+                    + eventBytes + " B/message, message channel " + frameBytes
+                    + " B/message heap (+" + (size + 1) + " B direct)");
+            assertTrue(frameBytes < eventBytes);
+            // The frame's heap cost is the buffer object, not the payload.
+            assertTrue(frameBytes < eventBytes - size);
+        }
+    }
+
+    @Test
+    public void messageFrameCarriesFlagAndPayload() {
+        ByteBuffer payload = ByteBuffer.wrap(new byte[] {1, 2, 3});
+        ByteBuffer frame = DataChannelObserver.messageFrame(new DataChannel.Buffer(payload, true));
+        assertEquals(4, frame.position());
+        assertEquals(DataChannelObserver.FRAME_FLAG_BINARY, frame.get(0));
+        assertEquals(3, frame.get(3));
+    }
+}
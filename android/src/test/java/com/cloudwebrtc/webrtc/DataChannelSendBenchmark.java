@@ -0,0 +1,131 @@
+package com.cloudwebrtc.webrtc;
+
+import com.cloudwebrtc.webrtc.utils.AllocationCounter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.StandardMethodCodec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the platform side of a send through the "dataChannelSend" method
+ * call (decode the method call envelope, read the arguments, encode the
+ * success reply) with the "FlutterWebRTC/dataChannelSend" frame. The Dart
+ * side encode and the DataChannel.send itself are the same work or outside
+ * the JVM, and are not measured.
+ */
+public class DataChannelSendBenchmark {
+    private static final int MESSAGES = 50000;
+    private static final String PEER_CONNECTION_ID = "0123abcd-42";
+
+    private long sentBytes;
+
+    private final MethodCallHandlerImpl.DataChannelSender sender =
+            (peerConnectionId, dataChannelId, bytebuffer, isBinary) -> sentBytes += bytebuffer.remaining();
+
+    @Test
+    public void framePathThroughput() {
+        MethodCallHandlerImpl.FrameIdCache ids = new MethodCallHandlerImpl.FrameIdCache();
+        for (int size : new int[] {64, 1024}) {
+            ByteBuffer call = methodCall(size);
+            ByteBuffer frame = frame(size);
+            Runnable methodPath = () -> {
+                call.rewind();
+                MethodCall decoded = StandardMethodCodec.INSTANCE.decodeMethodCall(call);
+                MethodCallHandlerImpl.dataChannelSendCall(decoded, sender);
+                StandardMethodCodec.INSTANCE.encodeSuccessEnvelope(null);
+            };
+            Runnable framePath = () -> {
+                frame.rewind();
+                MethodCallHandlerImpl.dataChannelSendFrame(frame, ids, sender);
+            };
+
+            double methodRate = AllocationCounter.runsPerSecond(MESSAGES, methodPath);
+            double frameRate = AllocationCounter.runsPerSecond(MESSAGES, framePath);
+            long methodBytes = AllocationCounter.bytesPerRun(MESSAGES, methodPath);
+            long frameBytes = AllocationCounter.bytesPerRun(MESSAGES, framePath);
+            System.out.printf("DataChannel send, %d B payload: method call %.0f msg/s (%.1f MB/s, %d B/msg), "
+                            + "frame %.0f msg/s (%.1f MB/s, %d B/msg)%n",
+                    size, methodRate, methodRate * size / 1e6, methodBytes,
+                    frameRate, frameRate * size / 1e6, frameBytes);
+            // The method call path copies the payload out of the envelope, the frame path slices it.
+            assertTrue(frameBytes < methodBytes);
+        }
+    }
+
+    @Test
+    public void frameDecodesHeader() {
+        ByteBuffer frame = frame(3);
+        final Object[] decoded = new Object[4];
+        MethodCallHandlerImpl.dataChannelSendFrame(frame, new MethodCallHandlerImpl.FrameIdCache(),
+                (peerConnectionId, dataChannelId, bytebuffer, isBinary) -> {
+            decoded[0] = peerConnectionId;
+            decoded[1] = dataChannelId;
+            decoded[2] = bytebuffer.remaining();
+            decoded[3] = isBinary;
+        });
+        assertEquals(PEER_CONNECTION_ID, decoded[0]);
+        assertEquals(7, decoded[1]);
+        assertEquals(3, decoded[2]);
+        assertEquals(true, decoded[3]);
+    }
+
+    @Test
+    public void frameReusesRecentPeerConnectionIds() {
+        MethodCallHandlerImpl.FrameIdCache ids = new MethodCallHandlerImpl.FrameIdCache();
+        final String[] decoded = new String[1];
+        MethodCallHandlerImpl.DataChannelSender capture =
+                (peerConnectionId, dataChannelId, bytebuffer, isBinary) -> decoded[0] = peerConnectionId;
+
+        MethodCallHandlerImpl.dataChannelSendFrame(frame(PEER_CONNECTION_ID, 3), ids, capture);
+        String first = decoded[0];
+        MethodCallHandlerImpl.dataChannelSendFrame(frame("0123abcd-43", 3), ids, capture);
+        assertEquals("0123abcd-43", decoded[0]);
+        MethodCallHandlerImpl.dataChannelSendFrame(frame(PEER_CONNECTION_ID, 3), ids, capture);
+        assertSame(first, decoded[0]);
+
+        // Only the sliced payload is allocated per frame.
+        ByteBuffer frame = frame(PEER_CONNECTION_ID, 1024);
+        long sliceBytes = AllocationCounter.bytesPerRun(MESSAGES, frame::slice);
+        long bytes = AllocationCounter.bytesPerRun(MESSAGES, () -> {
+            frame.rewind();
+            MethodCallHandlerImpl.dataChannelSendFrame(frame, ids, sender);
+        });
+        assertTrue("allocated " + bytes + " B/msg", bytes <= sliceBytes);
+    }
+
+    private static ByteBuffer methodCall(int size) {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("peerConnectionId", PEER_CONNECTION_ID);
+        arguments.put("dataChannelId", 7);
+        arguments.put("type", "binary");
+        arguments.put("data", new byte[size]);
+        return StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall("dataChannelSend", arguments));
+    }
+
+    /** Builds a frame the way RTCDataChannelNative.send does. */
+    private static ByteBuffer frame(int size) {
+        return frame(PEER_CONNECTION_ID, size);
+    }
+
+    private static ByteBuffer frame(String peerConnectionId, int size) {
+        byte[] id = peerConnectionId.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer frame = ByteBuffer.allocateDirect(6 + id.length + size);
+        frame.put(DataChannelObserver.FRAME_FLAG_BINARY);
+        frame.put((byte) id.length);
+        frame.put(id);
+        frame.putInt(7);
+        frame.put(new byte[size]);
+        frame.flip();
+        return frame;
+    }
+}
@@ -0,0 +1,108 @@
+package com.cloudwebrtc.webrtc;
+
+import com.cloudwebrtc.webrtc.utils.AllocationCounter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Compares owner lookups through MediaOwnerIndex with the previous walk over
+ * every peer connection's remote tracks, as the number of peers grows. The
+ * walk also fetched each peer's transceivers over JNI, which cannot run here,
+ * so the real difference is larger than reported.
+ */
+public class MediaOwnerIndexBenchmark {
+    private static final int TRACKS_PER_PEER = 3;
+    private static final int LOOKUPS = 200000;
+
+    @Test
+    public void lookupCostDoesNotGrowWithPeers() {
+        for (int peers : new int[] {1, 12, 100}) {
+            MediaOwnerIndex index = new MediaOwnerIndex();
+            List<Map<String, PeerConnectionObserver>> remoteTracks = new ArrayList<>();
+            String[] ids = new String[peers * TRACKS_PER_PEER];
+            for (int p = 0; p < peers; p++) {
+                PeerConnectionObserver owner = mock(PeerConnectionObserver.class);
+                Map<String, PeerConnectionObserver> tracks = new ConcurrentHashMap<>();
+                for (int t = 0; t < TRACKS_PER_PEER; t++) {
+                    String id = "track-" + p + "-" + t;
+                    ids[p * TRACKS_PER_PEER + t] = id;
+                    tracks.put(id, owner);
+                    index.putTrack(id, owner);
+                }
+                remoteTracks.add(tracks);
+            }
+
+            int[] cursor = {0};
+            double indexed = AllocationCounter.runsPerSecond(LOOKUPS,
+                    () -> index.getTrackOwner(ids[cursor[0]++ % ids.length]));
+            double scanned = AllocationCounter.runsPerSecond(LOOKUPS,
+                    () -> scan(remoteTracks, ids[cursor[0]++ % ids.length]));
+            System.out.printf("Track owner lookup, %d peers: index %.0f lookups/s, scan %.0f lookups/s%n",
+                    peers, indexed, scanned);
+
+            for (int i = 0; i < ids.length; i++) {
+                assertSame(scan(remoteTracks, ids[i]), index.getTrackOwner(ids[i]));
+            }
+        }
+    }
+
+    @Test
+    public void removeOwnerDropsOnlyItsEntries() {
+        MediaOwnerIndex index = new MediaOwnerIndex();
+        PeerConnectionObserver closed = mock(PeerConnectionObserver.class);
+        PeerConnectionObserver open = mock(PeerConnectionObserver.class);
+        index.putTrack("a", closed);
+        index.putStream("s", closed);
+        index.putTrack("b", open);
+
+        index.removeOwner(closed);
+        assertNull(index.getTrackOwner("a"));
+        assertNull(index.getStreamOwner("s"));
+        assertSame(open, index.getTrackOwner("b"));
+
+        // A stale removal must not drop an id that has moved to another owner.
+        index.removeTrack("b", closed);
+        assertSame(open, index.getTrackOwner("b"));
+    }
+
+    @Test
+    public void sharedIdKeepsItsRemainingOwner() {
+        MediaOwnerIndex index = new MediaOwnerIndex();
+        PeerConnectionObserver first = mock(PeerConnectionObserver.class);
+        PeerConnectionObserver second = mock(PeerConnectionObserver.class);
+        index.putStream("s", first);
+        index.putTrack("t", first);
+        index.putStream("s", second);
+        index.putTrack("t", second);
+
+        index.removeOwner(second);
+        assertSame(first, index.getStreamOwner("s"));
+        assertSame(first, index.getTrackOwner("t"));
+
+        index.putTrack("t", second);
+        index.removeTrack("t", first);
+        assertSame(second, index.getTrackOwner("t"));
+        index.removeTrack("t", second);
+        assertNull(index.getTrackOwner("t"));
+    }
+
+    private static PeerConnectionObserver scan(List<Map<String, PeerConnectionObserver>> remoteTracks,
+                                               String id) {
+        for (Map<String, PeerConnectionObserver> tracks : remoteTracks) {
+            PeerConnectionObserver owner = tracks.get(id);
+            if (owner != null) {
+                return owner;
+            }
+        }
+        return null;
+    }
+}
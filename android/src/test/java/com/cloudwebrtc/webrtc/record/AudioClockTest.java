@@ -0,0 +1,133 @@
+package com.cloudwebrtc.webrtc.record;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds AudioClock 30 minutes of 10 ms chunks whose capture clock runs off
+ * the monotonic clock, delivered with jitter, with delivery stalls that catch
+ * up in a burst and with capture stalls that lose samples. Every timestamp
+ * must stay within MAX_DRIFT_US of the time the chunk was really captured,
+ * and within that of the video frames captured alongside it once both are
+ * muxed.
+ */
+public class AudioClockTest {
+    private static final int SAMPLE_RATE = 48000;
+    private static final int FRAMES = SAMPLE_RATE / 100;
+    private static final long DURATION_US = 30L * 60 * 1_000_000;
+    private static final long MAX_JITTER_US = 4000;
+    /** Every this many chunks delivery stalls for DELIVERY_STALL_US, then catches up. */
+    private static final int DELIVERY_STALL_EVERY = 6000;
+    private static final long DELIVERY_STALL_US = 150_000;
+    /** Every this many chunks capture stops for CAPTURE_STALL_US and those samples are lost. */
+    private static final int CAPTURE_STALL_EVERY = 41000;
+    private static final long CAPTURE_STALL_US = 1_500_000;
+    private static final double VIDEO_FRAME_US = 1_000_000 / 30.0;
+    private static final long MAX_VIDEO_JITTER_US = 2000;
+
+    @Test
+    public void driftStaysBoundedOverThirtyMinutes() {
+        for (double ppm : new double[] {0, 300, -300}) {
+            long maxErrorUs = simulate(ppm, new Random(42));
+            System.out.println("Audio clock, capture clock " + ppm + " ppm: max error " + maxErrorUs + " us");
+            assertTrue("max error " + maxErrorUs + " us at " + ppm + " ppm",
+                    maxErrorUs < AudioClock.MAX_DRIFT_US);
+        }
+    }
+
+    @Test
+    public void muxedAudioVideoOffsetStaysBelowOneFrame() {
+        assertTrue(AudioClock.MAX_DRIFT_US < VIDEO_FRAME_US);
+        for (double ppm : new double[] {0, 300, -300}) {
+            long maxOffsetUs = simulateMuxed(ppm, new Random(7));
+            System.out.println("Muxed A/V, capture clock " + ppm + " ppm: max offset " + maxOffsetUs + " us");
+            assertTrue("max offset " + maxOffsetUs + " us at " + ppm + " ppm",
+                    maxOffsetUs < AudioClock.MAX_DRIFT_US);
+        }
+    }
+
+    @Test
+    public void firstChunkIsAnchoredToItsCaptureStart() {
+        AudioClock clock = new AudioClock();
+        assertEquals(990_000, clock.timestamp(FRAMES, SAMPLE_RATE, 1_000_000));
+        assertEquals(1_000_000, clock.timestamp(FRAMES, SAMPLE_RATE, 1_010_000));
+    }
+
+    /** Returns the largest |timestamp - capture time| seen. */
+    private static long simulate(double ppm, Random random) {
+        AudioClock clock = new AudioClock();
+        // Real time one chunk of samples takes to capture.
+        double chunkUs = AudioClock.durationUs(FRAMES, SAMPLE_RATE) * (1 - ppm / 1e6);
+        double captureStartUs = 1_000_000;
+        long stallReleaseUs = 0;
+        long maxErrorUs = 0;
+        for (int i = 0; captureStartUs < DURATION_US; i++) {
+            if (i > 0 && i % CAPTURE_STALL_EVERY == 0) {
+                captureStartUs += CAPTURE_STALL_US;
+            }
+            long captureEndUs = (long) (captureStartUs + chunkUs);
+            if (i > 0 && i % DELIVERY_STALL_EVERY == 0) {
+                stallReleaseUs = captureEndUs + DELIVERY_STALL_US;
+            }
+            long nowUs = Math.max(captureEndUs + (long) (random.nextDouble() * MAX_JITTER_US), stallReleaseUs);
+            long presentationTimeUs = clock.timestamp(FRAMES, SAMPLE_RATE, nowUs);
+            maxErrorUs = Math.max(maxErrorUs, Math.abs(presentationTimeUs - (long) captureStartUs));
+            captureStartUs += chunkUs;
+        }
+        return maxErrorUs;
+    }
+
+    /**
+     * Interleaves the audio chunks of {@link #simulate} with 30 fps video
+     * frames stamped in System.nanoTime() nanoseconds at capture, as WebRTC
+     * stamps the frames VideoFileRenderer encodes. Both tracks share the
+     * muxer's timeline, which starts at the first sample written. Returns the
+     * largest offset between a frame and the audio captured at the same
+     * instant; frames captured while audio capture stalled have no audio.
+     */
+    private static long simulateMuxed(double ppm, Random random) {
+        AudioClock clock = new AudioClock();
+        double chunkUs = AudioClock.durationUs(FRAMES, SAMPLE_RATE) * (1 - ppm / 1e6);
+        double captureStartUs = 1_000_000;
+        double frameCaptureUs = captureStartUs + random.nextDouble() * VIDEO_FRAME_US;
+        long stallReleaseUs = 0;
+        long muxerStartUs = -1;
+        long maxOffsetUs = 0;
+        for (int i = 0; captureStartUs < DURATION_US; i++) {
+            if (i > 0 && i % CAPTURE_STALL_EVERY == 0) {
+                captureStartUs += CAPTURE_STALL_US;
+            }
+            long captureEndUs = (long) (captureStartUs + chunkUs);
+            if (i > 0 && i % DELIVERY_STALL_EVERY == 0) {
+                stallReleaseUs = captureEndUs + DELIVERY_STALL_US;
+            }
+            long nowUs = Math.max(captureEndUs + (long) (random.nextDouble() * MAX_JITTER_US), stallReleaseUs);
+            long presentationTimeUs = clock.timestamp(FRAMES, SAMPLE_RATE, nowUs);
+            if (muxerStartUs < 0) {
+                muxerStartUs = Math.min(presentationTimeUs, (long) frameCaptureUs);
+            }
+            while (frameCaptureUs < captureStartUs) {
+                frameCaptureUs += nextFrameIntervalUs(random);
+            }
+            while (frameCaptureUs < captureEndUs) {
+                long frameTimestampNs = (long) (frameCaptureUs * 1000);
+                long videoUs = frameTimestampNs / 1000 - muxerStartUs;
+                // Media time of the sample captured with the frame.
+                double intoChunkUs = (frameCaptureUs - captureStartUs) * FRAMES * 1e6 / SAMPLE_RATE / chunkUs;
+                long audioUs = presentationTimeUs + (long) intoChunkUs - muxerStartUs;
+                maxOffsetUs = Math.max(maxOffsetUs, Math.abs(audioUs - videoUs));
+                frameCaptureUs += nextFrameIntervalUs(random);
+            }
+            captureStartUs += chunkUs;
+        }
+        return maxOffsetUs;
+    }
+
+    private static double nextFrameIntervalUs(Random random) {
+        return VIDEO_FRAME_US + (random.nextDouble() - 0.5) * 2 * MAX_VIDEO_JITTER_US;
+    }
+}
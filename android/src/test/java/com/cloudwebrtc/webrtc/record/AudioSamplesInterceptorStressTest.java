@@ -0,0 +1,108 @@
+package com.cloudwebrtc.webrtc.record;
+
+import com.cloudwebrtc.webrtc.utils.AllocationCounter;
+
+import org.junit.Test;
+import org.webrtc.audio.JavaAudioDeviceModule.AudioSamples;
+import org.webrtc.audio.JavaAudioDeviceModule.SamplesReadyCallback;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Attaches and detaches callbacks from several threads while another thread
+ * pumps 10 ms buffers through the interceptor as fast as it can, the way a
+ * recorder starting and stopping mid-call races the WebRTC audio thread.
+ */
+public class AudioSamplesInterceptorStressTest {
+    private static final int ATTACH_THREADS = 4;
+    private static final long DURATION_MS = 2000;
+    /** 10 ms of 48 kHz mono 16-bit PCM. */
+    private static final AudioSamples SAMPLES = new AudioSamples(2, 1, 48000, new byte[960]);
+
+    /** Counts buffers, and buffers delivered after detachCallback returned. */
+    private static final class CountingCallback implements SamplesReadyCallback {
+        final AtomicInteger delivered = new AtomicInteger();
+        final AtomicInteger afterDetach = new AtomicInteger();
+        volatile boolean detached = false;
+
+        @Override
+        public void onWebRtcAudioRecordSamplesReady(AudioSamples audioSamples) {
+            delivered.incrementAndGet();
+            if (detached) {
+                afterDetach.incrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    public void attachAndDetachWhileSamplesArePumped() throws Exception {
+        AudioSamplesInterceptor interceptor = new AudioSamplesInterceptor();
+        CountingCallback permanent = new CountingCallback();
+        interceptor.attachCallback(0, permanent);
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicInteger maxAfterDetach = new AtomicInteger();
+        AtomicInteger cycles = new AtomicInteger();
+        long deadline = System.currentTimeMillis() + DURATION_MS;
+        CountDownLatch done = new CountDownLatch(ATTACH_THREADS + 1);
+
+        for (int t = 0; t < ATTACH_THREADS; t++) {
+            final int id = t + 1;
+            new Thread(() -> {
+                try {
+                    while (System.currentTimeMillis() < deadline) {
+                        CountingCallback callback = new CountingCallback();
+                        interceptor.attachCallback(id, callback);
+                        Thread.yield();
+                        interceptor.detachCallback(id);
+                        callback.detached = true;
+                        Thread.yield();
+                        // A pump already iterating the old snapshot may deliver one more buffer.
+                        maxAfterDetach.accumulateAndGet(callback.afterDetach.get(), Math::max);
+                        cycles.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }, "attach-" + id).start();
+        }
+
+        final long[] pumped = {0};
+        final long[] pumpAllocated = {0};
+        new Thread(() -> {
+            try {
+                long start = AllocationCounter.allocatedBytes();
+                while (System.currentTimeMillis() < deadline) {
+                    for (int i = 0; i < 1000; i++) {
+                        interceptor.onWebRtcAudioRecordSamplesReady(SAMPLES);
+                    }
+                    pumped[0] += 1000;
+                }
+                pumpAllocated[0] = AllocationCounter.allocatedBytes() - start;
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                done.countDown();
+            }
+        }, "audio").start();
+
+        assertTrue(done.await(DURATION_MS + 10000, TimeUnit.MILLISECONDS));
+        System.out.println("AudioSamplesInterceptor stress: " + pumped[0] + " buffers, "
+                + cycles.get() + " attach/detach cycles, " + pumpAllocated[0] + " B allocated on the audio thread");
+        assertNull(failure.get());
+        assertEquals(pumped[0], permanent.delivered.get());
+        assertTrue(maxAfterDetach.get() <= 1);
+        assertTrue(cycles.get() > 0);
+        // A few bytes of JIT noise; a callback list copied per buffer would be megabytes.
+        assertTrue("audio thread allocated " + pumpAllocated[0] + " B", pumpAllocated[0] < 1024);
+    }
+}
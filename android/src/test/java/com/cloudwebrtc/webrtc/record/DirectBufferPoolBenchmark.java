@@ -0,0 +1,73 @@
+package com.cloudwebrtc.webrtc.record;
+
+import android.content.ComponentCallbacks2;
+
+import com.cloudwebrtc.webrtc.utils.AllocationCounter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the allocation rate per 1000 JPEG captures of a 720p frame: the
+ * rotated I420 copy plus the NV21 scratch buffer FrameCapturer takes per
+ * capture, pooled versus allocated with allocateDirect each time. The YUV
+ * conversions and the encode are native and not part of the measurement.
+ */
+public class DirectBufferPoolBenchmark {
+    private static final int CAPTURES = 1000;
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    @Test
+    public void pooledCapturesReuseBuffers() {
+        int i420Size = YuvConversions.i420Size(WIDTH, HEIGHT);
+        int nv21Size = WIDTH * HEIGHT + YuvConversions.chromaSize(WIDTH, HEIGHT) * 2;
+        DirectBufferPool pool = DirectBufferPool.getInstance();
+        pool.clear();
+
+        long directBefore = pool.allocatedBytes();
+        long pooledHeap = AllocationCounter.bytesPerRun(CAPTURES, () -> {
+            ByteBuffer i420 = DirectBufferPool.acquire(i420Size);
+            ByteBuffer nv21 = DirectBufferPool.acquire(nv21Size);
+            DirectBufferPool.release(nv21);
+            DirectBufferPool.release(i420);
+        }) * CAPTURES;
+        // Over the warm-up and the measured runs; only the first capture allocates.
+        long pooledDirect = pool.allocatedBytes() - directBefore;
+
+        long unpooledHeap = AllocationCounter.bytesPerRun(CAPTURES, () -> {
+            ByteBuffer.allocateDirect(i420Size);
+            ByteBuffer.allocateDirect(nv21Size);
+        }) * CAPTURES;
+        long unpooledDirect = (long) (i420Size + nv21Size) * CAPTURES;
+
+        System.out.println("Per " + CAPTURES + " captures of " + WIDTH + "x" + HEIGHT + ": pooled "
+                + pooledDirect + " B direct, " + pooledHeap + " B heap; allocateDirect "
+                + unpooledDirect + " B direct, " + unpooledHeap + " B heap");
+        assertTrue(pooledDirect * 100 < unpooledDirect);
+        assertTrue(pooledHeap < unpooledHeap);
+    }
+
+    @Test
+    public void trimClearsOnlyUnderMemoryPressure() {
+        DirectBufferPool pool = DirectBufferPool.getInstance();
+        int[] kept = {ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE, ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN};
+        int[] cleared = {ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW, ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL,
+                ComponentCallbacks2.TRIM_MEMORY_BACKGROUND, ComponentCallbacks2.TRIM_MEMORY_MODERATE,
+                ComponentCallbacks2.TRIM_MEMORY_COMPLETE};
+        for (int level : kept) {
+            DirectBufferPool.release(DirectBufferPool.acquire(4096));
+            pool.onTrimMemory(level);
+            assertTrue("level " + level, pool.pooledBytes() > 0);
+        }
+        for (int level : cleared) {
+            DirectBufferPool.release(DirectBufferPool.acquire(4096));
+            pool.onTrimMemory(level);
+            assertEquals("level " + level, 0, pool.pooledBytes());
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.cloudwebrtc.webrtc.record;
+
+import com.cloudwebrtc.webrtc.utils.AllocationCounter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the FrameCapturer encode path per 1000 captures of an I420 frame,
+ * to a file and in memory, against the previous path, which allocated the
+ * NV21 or ARGB copy, the output stream and the result per capture. libyuv,
+ * YuvImage and Bitmap are native, so the codecs are replaced by Java
+ * equivalents that touch the same memory and write a fixed-size image.
+ */
+public class FrameEncoderBenchmark {
+    private static final int CAPTURES = 1000;
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    /** Bytes the fake codecs write per image, about a VGA JPEG. */
+    private static final int IMAGE_BYTES = 40 * 1024;
+
+    private static final byte[] image = new byte[IMAGE_BYTES];
+
+    private final FrameEncoder.Codecs codecs = new FrameEncoder.Codecs() {
+        @Override
+        public void i420ToNv21(ByteBuffer i420, int width, int height, ByteBuffer nv21) {
+            int lumaSize = width * height;
+            int chromaSize = YuvConversions.chromaSize(width, height);
+            for (int i = 0; i < lumaSize; i++) {
+                nv21.put(i, i420.get(i));
+            }
+            for (int i = 0; i < chromaSize; i++) {
+                nv21.put(lumaSize + 2 * i, i420.get(lumaSize + chromaSize + i));
+                nv21.put(lumaSize + 2 * i + 1, i420.get(lumaSize + i));
+            }
+        }
+
+        @Override
+        public void compressNv21(byte[] nv21, int width, int height, int quality, OutputStream out) {
+            write(out);
+        }
+
+        @Override
+        public void compressRgba(ByteBuffer rgba, int width, int height, boolean png, int quality,
+                                 OutputStream out) {
+            write(out);
+        }
+
+        @Override
+        public void trim() {
+        }
+    };
+
+    private ByteBuffer i420;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        i420 = ByteBuffer.allocateDirect(YuvConversions.i420Size(WIDTH, HEIGHT));
+        for (int i = 0; i < i420.capacity(); i++) {
+            i420.put(i, (byte) i);
+        }
+        file = File.createTempFile("capture", ".img");
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Test
+    public void capturesReuseScratchMemory() {
+        FrameEncoder encoder = new FrameEncoder(codecs);
+        int frameBytes = i420.capacity();
+        for (String format : new String[] {FrameCapturer.FORMAT_JPEG, FrameCapturer.FORMAT_PNG,
+                FrameCapturer.FORMAT_I420}) {
+            long toFile = heapPerThousand(() -> encoder.encode(i420, WIDTH, HEIGHT, format, 90, file));
+            long inMemory = heapPerThousand(() -> encoder.encode(i420, WIDTH, HEIGHT, format, 90, null));
+            long previousToFile = heapPerThousand(() -> previousEncode(format, file));
+            long previousInMemory = heapPerThousand(() -> previousEncode(format, null));
+            double rate = AllocationCounter.runsPerSecond(CAPTURES,
+                    () -> run(() -> encoder.encode(i420, WIDTH, HEIGHT, format, 90, null)));
+            System.out.printf("Per %d %s captures of %dx%d: to file %d B heap (previously %d B), "
+                            + "in memory %d B heap (previously %d B), %.0f captures/s%n",
+                    CAPTURES, format, WIDTH, HEIGHT, toFile, previousToFile, inMemory, previousInMemory, rate);
+            // Nothing frame-sized is allocated for a file, only the result in memory.
+            assertTrue(format, toFile < (long) frameBytes * CAPTURES / 10);
+            assertTrue(format, toFile < previousToFile);
+            assertTrue(format, inMemory <= previousInMemory);
+        }
+    }
+
+    @Test
+    public void encodesToFileAndMemoryAlike() throws IOException {
+        FrameEncoder encoder = new FrameEncoder(codecs);
+        byte[] bytes = encoder.encode(i420, WIDTH, HEIGHT, FrameCapturer.FORMAT_JPEG, 90, null);
+        assertArrayEquals(image, bytes);
+        assertNull(encoder.encode(i420, WIDTH, HEIGHT, FrameCapturer.FORMAT_JPEG, 90, file));
+        assertEquals(IMAGE_BYTES, file.length());
+
+        i420.rewind();
+        assertNull(encoder.encode(i420, WIDTH, HEIGHT, FrameCapturer.FORMAT_I420, 90, file));
+        assertEquals(i420.capacity(), file.length());
+    }
+
+    @Test
+    public void bareFileNameHasNoParentToCreate() throws IOException {
+        File bare = new File("capture-" + System.nanoTime() + ".i420");
+        try {
+            i420.rewind();
+            new FrameEncoder(codecs).encode(i420, WIDTH, HEIGHT, FrameCapturer.FORMAT_I420, 90, bare);
+            assertEquals(i420.capacity(), bare.length());
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            bare.delete();
+        }
+    }
+
+    private interface Capture {
+        void run() throws IOException;
+    }
+
+    /** Heap bytes allocated by 1000 captures, after as many to warm up. */
+    private long heapPerThousand(Capture capture) {
+        return AllocationCounter.bytesPerRun(CAPTURES, () -> run(capture)) * CAPTURES;
+    }
+
+    private void run(Capture capture) {
+        i420.rewind();
+        try {
+            capture.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** The encode as FrameCapturer did it before the scratch memory was reused. */
+    private void previousEncode(String format, File file) throws IOException {
+        byte[] bytes;
+        if (FrameCapturer.FORMAT_I420.equals(format)) {
+            bytes = new byte[i420.remaining()];
+            i420.get(bytes);
+        } else {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            if (FrameCapturer.FORMAT_PNG.equals(format)) {
+                int[] argb = new int[WIDTH * HEIGHT];
+                YuvConversions.i420ToArgb(i420, WIDTH, HEIGHT, IntBuffer.wrap(argb), false);
+                write(outputStream);
+            } else {
+                ByteBuffer nv21 = DirectBufferPool.acquire(YuvConversions.i420Size(WIDTH, HEIGHT));
+                byte[] data;
+                try {
+                    codecs.i420ToNv21(i420, WIDTH, HEIGHT, nv21);
+                    nv21.rewind();
+                    data = new byte[nv21.remaining()];
+                    nv21.get(data);
+                } finally {
+                    DirectBufferPool.release(nv21);
+                }
+                codecs.compressNv21(data, WIDTH, HEIGHT, 90, outputStream);
+            }
+            bytes = outputStream.toByteArray();
+        }
+        if (file != null) {
+            try (FileOutputStream outputStream = new FileOutputStream(file)) {
+                outputStream.write(bytes);
+            }
+        }
+    }
+
+    private static void write(OutputStream out) {
+        try {
+            // Codecs write in small blocks, as Bitmap.compress does.
+            for (int offset = 0; offset < image.length; offset += 4096) {
+                out.write(image, offset, Math.min(4096, image.length - offset));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
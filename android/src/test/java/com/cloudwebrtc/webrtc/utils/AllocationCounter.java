@@ -0,0 +1,43 @@
+package com.cloudwebrtc.webrtc.utils;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures heap bytes allocated by the calling thread, for allocation
+ * benchmarks run as plain JVM unit tests. Direct buffer memory is not heap
+ * and is not counted.
+ */
+public final class AllocationCounter {
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private AllocationCounter() {}
+
+    public static long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Average heap bytes allocated per run of task, measured after an equal warm-up. */
+    public static long bytesPerRun(int runs, Runnable task) {
+        for (int i = 0; i < runs; i++) {
+            task.run();
+        }
+        long start = allocatedBytes();
+        for (int i = 0; i < runs; i++) {
+            task.run();
+        }
+        return (allocatedBytes() - start) / runs;
+    }
+
+    /** Runs per second of task, measured after an equal warm-up. */
+    public static double runsPerSecond(int runs, Runnable task) {
+        for (int i = 0; i < runs; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            task.run();
+        }
+        return runs * 1e9 / Math.max(1, System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,91 @@
+package com.cloudwebrtc.webrtc.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares counter allocation with the previous UUID.randomUUID() loop, which
+ * checked each candidate against every peer connection's remote streams, as
+ * the number of peers grows.
+ */
+public class IdAllocatorBenchmark {
+    private static final int STREAMS_PER_PEER = 2;
+    private static final int ALLOCATIONS = 20000;
+
+    @Test
+    public void allocationCostDoesNotGrowWithPeers() {
+        IdAllocator counter = new IdAllocator(IdAllocator.Scheme.COUNTER);
+        for (int peers : new int[] {1, 12, 100}) {
+            List<Map<String, Object>> remoteStreams = new ArrayList<>();
+            for (int p = 0; p < peers; p++) {
+                Map<String, Object> streams = new HashMap<>();
+                for (int s = 0; s < STREAMS_PER_PEER; s++) {
+                    streams.put(UUID.randomUUID().toString(), streams);
+                }
+                remoteStreams.add(streams);
+            }
+
+            double counted = AllocationCounter.runsPerSecond(ALLOCATIONS, counter::next);
+            double checked = AllocationCounter.runsPerSecond(ALLOCATIONS, () -> {
+                String uuid;
+                do {
+                    uuid = UUID.randomUUID().toString();
+                } while (find(remoteStreams, uuid) != null);
+            });
+            System.out.printf("Id allocation, %d peers: counter %.0f ids/s, checked UUID %.0f ids/s%n",
+                    peers, counted, checked);
+        }
+    }
+
+    @Test
+    public void idsAreFixedWidth() {
+        IdAllocator allocator = new IdAllocator(IdAllocator.Scheme.COUNTER, "0123abcd");
+        String first = allocator.next();
+        assertEquals("0123abcd-0000000000000001", first);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(first.length(), allocator.next().length());
+        }
+        assertEquals(36, new IdAllocator(IdAllocator.Scheme.RANDOM_UUID).next().length());
+    }
+
+    @Test
+    public void defaultsToRandomUuid() {
+        assertTrue(new IdAllocator().next().matches(
+                "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}"));
+    }
+
+    @Test
+    public void dataChannelNamesDoNotCollide() {
+        for (IdAllocator.Scheme scheme : IdAllocator.Scheme.values()) {
+            IdAllocator allocator = new IdAllocator(scheme);
+            Set<String> names = new HashSet<>();
+            for (int pc = 0; pc < 200; pc++) {
+                String peerConnectionId = allocator.next();
+                for (int dc = 0; dc < 200; dc++) {
+                    // As DataChannelObserver builds its channel names.
+                    assertTrue(names.add("FlutterWebRTC/dataChannelEvent" + peerConnectionId + dc));
+                }
+            }
+        }
+    }
+
+    private static Object find(List<Map<String, Object>> remoteStreams, String id) {
+        for (Map<String, Object> streams : remoteStreams) {
+            Object stream = streams.get(id);
+            if (stream != null) {
+                return stream;
+            }
+        }
+        return null;
+    }
+}
@@ -5,10 +5,27 @@ import 'media_stream_track.dart';
 abstract class MediaRecorder {
   /// For Android use audioChannel param
   /// For iOS use audioTrack
+  ///
+  /// [options] (Android only) configures the encoder: 'videoCodec'
+  /// ('h264' or 'hevc'), 'bitrateMode' ('cbr', 'vbr' or 'cq'),
+  /// 'videoBitrate', 'frameRate', 'keyFrameInterval' (seconds), 'width' and
+  /// 'height'. Codecs the device cannot encode fall back to H.264.
+  /// 'maxWidth', 'maxHeight' and 'maxFrameRate' record a downscaled copy:
+  /// frames are scaled to fit and extra frames are dropped before encoding.
+  /// 'maxPendingFrames' bounds the frames waiting to be encoded, and
+  /// 'frameDropPolicy' ('dropOldest', 'dropNewest' or 'block') decides what
+  /// happens when that bound is reached.
+  /// Without a video track only audio is recorded, to an m4a file, or to
+  /// WebM when 'audioCodec' is 'opus' and the device (Android 10+) supports
+  /// it. 'audioBitrate' sets the audio encoder bitrate.
+  /// 'segmentDurationMs' and/or 'segmentMaxBytes' split the recording into
+  /// path_001.ext, path_002.ext, ... at keyframes, and 'ringBufferDurationMs'
+  /// keeps only the newest segments covering that duration on disk.
   Future<void> start(
     String path, {
     MediaStreamTrack? videoTrack,
     RecorderAudioChannel? audioChannel,
+    Map<String, dynamic>? options,
   });
 
   /// Only for Flutter Web
@@ -99,6 +99,33 @@ abstract class MediaStreamTrack {
     throw UnimplementedError();
   }
 
+  /// (Android only) Captures the next frame in memory. [format] is 'jpeg',
+  /// 'png', 'webp' or 'i420' (raw planes); [maxDimension] bounds the longest
+  /// side, 0 keeping the frame size. Rotation is already applied. Returns
+  /// 'bytes', 'width', 'height' and 'format'.
+  Future<Map<String, dynamic>> captureFrameData(
+      {String format = 'jpeg', int quality = 100, int maxDimension = 0}) {
+    throw UnimplementedError();
+  }
+
+  /// (Android only) Delivers frames of this video track to [onFrame] at
+  /// most [maxFps] times a second, scaled so the longest side is at most
+  /// [maxDimension] (0 keeps the frame size) and rotated upright. [format] is
+  /// 'rgba' or 'i420' (packed planes). Frames arriving while the previous one
+  /// is still being handled are dropped.
+  Future<void> startFrameTap(
+      void Function(int width, int height, int timestampNs, Uint8List pixels)
+          onFrame,
+      {int maxFps = 5,
+      int maxDimension = 0,
+      String format = 'rgba'}) {
+    throw UnimplementedError();
+  }
+
+  Future<void> stopFrameTap() {
+    throw UnimplementedError();
+  }
+
   Future<bool> hasTorch() {
     throw UnimplementedError();
   }
@@ -66,11 +66,15 @@ typedef RTCDataChannelStateCallback = void Function(RTCDataChannelState state);
 typedef RTCDataChannelOnMessageCallback = void Function(
     RTCDataChannelMessage data);
 
+typedef RTCDataChannelOnBufferedAmountLowCallback = void Function(
+    int currentAmount);
+
 abstract class RTCDataChannel {
   RTCDataChannel();
 
   RTCDataChannelStateCallback? onDataChannelState;
   RTCDataChannelOnMessageCallback? onMessage;
+  RTCDataChannelOnBufferedAmountLowCallback? onBufferedAmountLow;
 
   /// Get current state.
   RTCDataChannelState? get state;
@@ -10,8 +10,11 @@ class MediaRecorder extends _interface.MediaRecorder {
 
   @override
   Future<void> start(String path,
-          {MediaStreamTrack? videoTrack, RecorderAudioChannel? audioChannel}) =>
-      _delegate.start(path, videoTrack: videoTrack, audioChannel: audioChannel);
+          {MediaStreamTrack? videoTrack,
+          RecorderAudioChannel? audioChannel,
+          Map<String, dynamic>? options}) =>
+      _delegate.start(path,
+          videoTrack: videoTrack, audioChannel: audioChannel, options: options);
 
   @override
   Future stop() => _delegate.stop();
@@ -1,6 +1,8 @@
 import 'dart:async';
 import 'dart:math';
 
+import 'package:flutter/services.dart';
+
 import '../interface/enums.dart';
 import '../interface/media_recorder.dart';
 import '../interface/media_stream.dart';
@@ -10,12 +12,24 @@ import 'utils.dart';
 class MediaRecorderNative extends MediaRecorder {
   static final _random = Random();
   final _recorderId = _random.nextInt(0x7FFFFFFF);
+  StreamSubscription<dynamic>? _eventSubscription;
+
+  /// A segment was finalized in segmented or ring buffer mode.
+  void Function(String path, int index, int durationMs, int sizeBytes)?
+      onSegmentFinished;
+
+  /// A segment was deleted to keep the ring buffer within its duration.
+  void Function(String path, int index)? onSegmentDeleted;
+
+  /// All files were finalized after [stop]; [paths] are the files left on
+  /// disk, oldest first.
+  void Function(List<String> paths)? onRecordingFinished;
 
   @override
   Future<void> start(String path,
-      {MediaStreamTrack? videoTrack, RecorderAudioChannel? audioChannel
-      // TODO(cloudwebrtc): add codec/quality options
-      }) async {
+      {MediaStreamTrack? videoTrack,
+      RecorderAudioChannel? audioChannel,
+      Map<String, dynamic>? options}) async {
     if (audioChannel == null && videoTrack == null) {
       throw Exception('Neither audio nor video track were provided');
     }
@@ -24,8 +38,37 @@ class MediaRecorderNative extends MediaRecorder {
       'path': path,
       if (audioChannel != null) 'audioChannel': audioChannel.index,
       if (videoTrack != null) 'videoTrackId': videoTrack.id,
+      if (options != null) 'options': options,
       'recorderId': _recorderId
     });
+    _eventSubscription =
+        EventChannel('FlutterWebRTC/mediaRecorderEvent$_recorderId')
+            .receiveBroadcastStream()
+            .listen(eventListener, onError: errorListener);
+  }
+
+  void eventListener(dynamic event) {
+    final Map<dynamic, dynamic> map = event;
+    switch (map['event']) {
+      case 'onSegmentFinished':
+        onSegmentFinished?.call(
+            map['path'], map['index'], map['durationMs'], map['sizeBytes']);
+        break;
+      case 'onSegmentDeleted':
+        onSegmentDeleted?.call(map['path'], map['index']);
+        break;
+      case 'onRecordingFinished':
+        onRecordingFinished?.call(List<String>.from(map['paths']));
+        _eventSubscription?.cancel();
+        _eventSubscription = null;
+        break;
+    }
+  }
+
+  void errorListener(Object obj) {
+    if (obj is Exception) {
+      throw obj;
+    }
   }
 
   @override
@@ -34,6 +77,20 @@ class MediaRecorderNative extends MediaRecorder {
     throw 'It\'s for Flutter Web only';
   }
 
+  /// Frame counters of an ongoing recording: 'queuedFrames',
+  /// 'droppedFrames', 'pendingFrames' and 'renderedFrames'. With audio, also
+  /// 'audioDurationMs', 'audioDroppedChunks' (10 ms chunks dropped because
+  /// the encoder fell behind), 'audioCallbackThreadCpuMs' and
+  /// 'audioCaptureCpuMs', the CPU time of the recorder's codec callback thread
+  /// and of its sample copies on the WebRTC audio thread, and
+  /// 'audioCpuMsPerMinute', their sum per minute of recorded audio. The
+  /// encoding itself, usually done out of process, is not included.
+  Future<Map<String, dynamic>> getStats() async {
+    final Map<dynamic, dynamic> stats = await WebRTC.invokeMethod(
+        'getRecorderStats', {'recorderId': _recorderId});
+    return stats.cast<String, dynamic>();
+  }
+
   @override
   Future<dynamic> stop() async => await WebRTC.methodChannel()
       .invokeMethod('stopRecordToFile', {'recorderId': _recorderId});
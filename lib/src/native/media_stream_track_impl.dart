@@ -2,6 +2,7 @@ import 'dart:async';
 import 'dart:io';
 import 'dart:typed_data';
 
+import 'package:flutter/services.dart';
 import 'package:flutter_webrtc/flutter_webrtc.dart';
 import 'package:path_provider/path_provider.dart';
 
@@ -18,6 +19,7 @@ class MediaStreamTrackNative extends MediaStreamTrack {
 
   final _channel = WebRTC.methodChannel();
   final String _trackId;
+  BasicMessageChannel<ByteData>? _frameTapChannel;
   final String _label;
   final String _kind;
   bool _enabled;
@@ -77,6 +79,16 @@ class MediaStreamTrackNative extends MediaStreamTrack {
 
   @override
   Future<ByteBuffer> captureFrame() async {
+    if (Platform.isAndroid) {
+      final frame = await captureFrameData();
+      final bytes = frame['bytes'] as Uint8List;
+      // The codec returns a view into the whole reply; hand out only the image.
+      if (bytes.offsetInBytes == 0 &&
+          bytes.lengthInBytes == bytes.buffer.lengthInBytes) {
+        return bytes.buffer;
+      }
+      return Uint8List.fromList(bytes).buffer;
+    }
     var filePath = await getTemporaryDirectory();
     await _channel.invokeMethod<void>(
       'captureFrame',
@@ -90,6 +102,66 @@ class MediaStreamTrackNative extends MediaStreamTrack {
         .then((value) => value.buffer);
   }
 
+  /// Android only.
+  @override
+  Future<Map<String, dynamic>> captureFrameData(
+      {String format = 'jpeg', int quality = 100, int maxDimension = 0}) async {
+    final Map<dynamic, dynamic> frame = await _channel.invokeMethod(
+      'captureFrame',
+      <String, dynamic>{
+        'trackId': _trackId,
+        'options': <String, dynamic>{
+          'format': format,
+          'quality': quality,
+          'maxDimension': maxDimension,
+        },
+      },
+    );
+    return frame.cast<String, dynamic>();
+  }
+
+  /// Android only.
+  @override
+  Future<void> startFrameTap(
+      void Function(int width, int height, int timestampNs, Uint8List pixels)
+          onFrame,
+      {int maxFps = 5,
+      int maxDimension = 0,
+      String format = 'rgba'}) async {
+    _frameTapChannel?.setMessageHandler(null);
+    final channel = BasicMessageChannel<ByteData>(
+        'FlutterWebRTC/frameTap$_trackId', BinaryCodec());
+    // 24 byte header: width, height, format, padding, timestamp in ns.
+    channel.setMessageHandler((ByteData? frame) async {
+      if (frame != null && frame.lengthInBytes >= 24) {
+        onFrame(
+            frame.getInt32(0),
+            frame.getInt32(4),
+            frame.getInt64(16),
+            frame.buffer.asUint8List(
+                frame.offsetInBytes + 24, frame.lengthInBytes - 24));
+      }
+      return ByteData(0);
+    });
+    _frameTapChannel = channel;
+    await _channel.invokeMethod('startFrameTap', <String, dynamic>{
+      'trackId': _trackId,
+      'options': <String, dynamic>{
+        'maxFps': maxFps,
+        'maxDimension': maxDimension,
+        'format': format,
+      },
+    });
+  }
+
+  @override
+  Future<void> stopFrameTap() async {
+    await _channel.invokeMethod(
+        'stopFrameTap', <String, dynamic>{'trackId': _trackId});
+    _frameTapChannel?.setMessageHandler(null);
+    _frameTapChannel = null;
+  }
+
   @override
   Future<void> applyConstraints([Map<String, dynamic>? constraints]) {
     if (constraints == null) return Future.value();
@@ -1,4 +1,6 @@
 import 'dart:async';
+import 'dart:convert';
+import 'dart:typed_data';
 
 import 'package:flutter/services.dart';
 
@@ -11,6 +13,11 @@ final _typeStringToMessageType = <String, MessageType>{
   'binary': MessageType.binary
 };
 
+const _frameFlagBinary = 0x01;
+
+const _sendChannel = BasicMessageChannel<ByteData>(
+    'FlutterWebRTC/dataChannelSend', BinaryCodec());
+
 /// A class that represents a WebRTC datachannel.
 /// Can send and receive text and binary messages.
 class RTCDataChannelNative extends RTCDataChannel {
@@ -28,6 +35,13 @@ class RTCDataChannelNative extends RTCDataChannel {
   RTCDataChannelState? _state;
   final _channel = WebRTC.methodChannel();
   StreamSubscription<dynamic>? _eventSubscription;
+  BasicMessageChannel<ByteData>? _messageChannel;
+  List<int>? _peerConnectionIdBytes;
+
+  /// Progress of [sendFile] / [receiveToFile]; [direction] is 'send' or
+  /// 'receive'.
+  void Function(String direction, int transferred, int total)?
+      onFileTransferProgress;
 
   @override
   RTCDataChannelState? get state => _state;
@@ -64,13 +78,110 @@ class RTCDataChannelNative extends RTCDataChannel {
           message = RTCDataChannelMessage(data);
         }
 
-        onMessage?.call(message);
-
-        _messageController.add(message);
+        _dispatchMessage(message);
+        break;
+      case 'dataChannelBufferedAmountLow':
+        onBufferedAmountLow?.call(map['bufferedAmount']);
+        break;
+      case 'dataChannelFileTransferProgress':
+        onFileTransferProgress?.call(
+            map['direction'], map['transferred'], map['total']);
         break;
     }
   }
 
+  /// Sends are queued natively once more than [highWaterMark] bytes are
+  /// buffered; [onBufferedAmountLow] fires when the buffered amount drops
+  /// to [bufferedAmountLowThreshold].
+  Future<void> setBufferedAmountThresholds(
+      {int? highWaterMark, int bufferedAmountLowThreshold = 0}) async {
+    await _channel.invokeMethod(
+        'dataChannelSetBufferedAmountThresholds', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'dataChannelId': _dataChannelId,
+      if (highWaterMark != null) 'highWaterMark': highWaterMark,
+      'bufferedAmountLowThreshold': bufferedAmountLowThreshold,
+    });
+  }
+
+  /// Streams the file at [path] over this channel as binary messages of
+  /// [chunkSize] bytes, without loading it into Dart. Each message carries an
+  /// 8 byte chunk header, so the remote side should use [receiveToFile].
+  /// Completes with the number of bytes sent.
+  Future<int> sendFile(String path, {int? chunkSize}) async {
+    final response = await _channel
+        .invokeMethod<int>('dataChannelSendFile', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'dataChannelId': _dataChannelId,
+      'path': path,
+      if (chunkSize != null) 'chunkSize': chunkSize,
+    });
+    return response ?? 0;
+  }
+
+  /// Writes incoming [sendFile] chunks to [path] until [size] bytes have been
+  /// received; other messages are still delivered as usual.
+  /// Completes with the number of bytes written.
+  Future<int> receiveToFile(String path, int size) async {
+    final response = await _channel
+        .invokeMethod<int>('dataChannelReceiveToFile', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'dataChannelId': _dataChannelId,
+      'path': path,
+      'size': size,
+    });
+    return response ?? 0;
+  }
+
+  /// Bytes buffered by the transport plus bytes waiting in the send queue.
+  Future<int> getBufferedAmount() async {
+    final response = await _channel.invokeMethod<Map<dynamic, dynamic>>(
+        'dataChannelGetBufferedAmount', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'dataChannelId': _dataChannelId,
+    });
+    return response?['bufferedAmount'] ?? 0;
+  }
+
+  void _dispatchMessage(RTCDataChannelMessage message) {
+    onMessage?.call(message);
+
+    _messageController.add(message);
+  }
+
+  /// Receive messages as raw frames on a dedicated binary channel instead of
+  /// the event channel, which skips the map encoding per message.
+  Future<void> setMessageChannelEnabled(bool enabled) async {
+    if (enabled && _messageChannel == null) {
+      _messageChannel = BasicMessageChannel<ByteData>(
+          'FlutterWebRTC/dataChannelMessage$_peerConnectionId$_dataChannelId',
+          BinaryCodec());
+      _messageChannel!.setMessageHandler(_messageChannelHandler);
+    } else if (!enabled && _messageChannel != null) {
+      _messageChannel!.setMessageHandler(null);
+      _messageChannel = null;
+    }
+    await _channel
+        .invokeMethod('dataChannelSetMessageChannel', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'dataChannelId': _dataChannelId,
+      'enabled': enabled,
+    });
+  }
+
+  Future<ByteData> _messageChannelHandler(ByteData? frame) async {
+    if (frame != null && frame.lengthInBytes > 0) {
+      var payload = frame.buffer
+          .asUint8List(frame.offsetInBytes + 1, frame.lengthInBytes - 1);
+      if (frame.getUint8(0) & _frameFlagBinary != 0) {
+        _dispatchMessage(RTCDataChannelMessage.fromBinary(payload));
+      } else {
+        _dispatchMessage(RTCDataChannelMessage(utf8.decode(payload)));
+      }
+    }
+    return ByteData(0);
+  }
+
   EventChannel _eventChannelFor(String peerConnectionId, int dataChannelId) {
     return EventChannel(
         'FlutterWebRTC/dataChannelEvent$peerConnectionId$dataChannelId');
@@ -84,6 +195,10 @@ class RTCDataChannelNative extends RTCDataChannel {
 
   @override
   Future<void> send(RTCDataChannelMessage message) async {
+    if (WebRTC.platformIsAndroid) {
+      await _sendChannel.send(_encodeSendFrame(message));
+      return;
+    }
     await _channel.invokeMethod('dataChannelSend', <String, dynamic>{
       'peerConnectionId': _peerConnectionId,
       'dataChannelId': _dataChannelId,
@@ -92,8 +207,25 @@ class RTCDataChannelNative extends RTCDataChannel {
     });
   }
 
+  /// Frame layout for the send fast path:
+  /// [u8 flags][u8 idLength][peerConnectionId][i32 dataChannelId][payload].
+  ByteData _encodeSendFrame(RTCDataChannelMessage message) {
+    var id = _peerConnectionIdBytes ??= ascii.encode(_peerConnectionId);
+    var payload = message.isBinary ? message.binary : utf8.encode(message.text);
+    var frame = Uint8List(6 + id.length + payload.length);
+    var view = ByteData.sublistView(frame);
+    view.setUint8(0, message.isBinary ? _frameFlagBinary : 0);
+    view.setUint8(1, id.length);
+    frame.setRange(2, 2 + id.length, id);
+    view.setInt32(2 + id.length, _dataChannelId);
+    frame.setRange(6 + id.length, frame.length, payload);
+    return view;
+  }
+
   @override
   Future<void> close() async {
+    _messageChannel?.setMessageHandler(null);
+    _messageChannel = null;
     await _stateChangeController.close();
     await _messageController.close();
     await _eventSubscription?.cancel();
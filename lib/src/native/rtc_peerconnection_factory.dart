@@ -4,8 +4,10 @@ import '../interface/media_recorder.dart';
 import '../interface/media_stream.dart';
 import '../interface/navigator.dart';
 import '../interface/rtc_peerconnection.dart';
+import '../interface/rtc_stats_report.dart';
 import '../interface/rtc_video_renderer.dart';
 import 'factory_impl.dart';
+import 'utils.dart';
 
 Future<RTCPeerConnection> createPeerConnection(
     Map<String, dynamic> configuration,
@@ -27,3 +29,47 @@ VideoRenderer videoRenderer() {
 }
 
 Navigator get navigator => RTCFactoryNative.instance.navigator;
+
+/// Stats of one peer connection returned by [getStatsForAll].
+class PeerConnectionStats {
+  PeerConnectionStats(
+      this.peerConnectionId, this.stats, this.latencyMs, this.error);
+
+  final String peerConnectionId;
+  final List<StatsReport> stats;
+
+  /// Time the native stats collection took for this peer alone.
+  final double? latencyMs;
+  final String? error;
+}
+
+/// Collects stats from every peer connection (or only [peerConnectionIds])
+/// with a single platform call; [types] and [ids] select reports as in
+/// `getStatsWithSelector`. Peers that have not answered within [timeout]
+/// (5 seconds by default) are returned with an [PeerConnectionStats.error].
+Future<List<PeerConnectionStats>> getStatsForAll(
+    {List<String>? peerConnectionIds,
+    List<String>? types,
+    List<String>? ids,
+    Duration? timeout}) async {
+  final response =
+      await WebRTC.invokeMethod('getStatsForAll', <String, dynamic>{
+    if (peerConnectionIds != null) 'peerConnectionIds': peerConnectionIds,
+    if (types != null) 'types': types,
+    if (ids != null) 'ids': ids,
+    if (timeout != null) 'timeoutMs': timeout.inMilliseconds,
+  });
+  final Map<dynamic, dynamic> peers = response['peers'];
+  return peers.entries.map((peer) {
+    final Map<dynamic, dynamic> entry = peer.value;
+    final List<dynamic> reports = entry['stats'] ?? [];
+    return PeerConnectionStats(
+        peer.key,
+        reports
+            .map((report) => StatsReport(report['id'], report['type'],
+                report['timestamp'], report['values']))
+            .toList(),
+        (entry['latencyMs'] as num?)?.toDouble(),
+        entry['error']);
+  }).toList();
+}
@@ -47,6 +47,11 @@ class RTCPeerConnectionNative extends RTCPeerConnection {
   RTCIceConnectionState? _iceConnectionState;
   RTCPeerConnectionState? _connectionState;
 
+  /// Samples pushed by [startStatsSampler]; each entry holds 'id', 'type',
+  /// optionally 'kind', and the numeric metrics that applied to that report.
+  void Function(double timestamp, List<Map<dynamic, dynamic>> samples)?
+      onStatsSample;
+
   final Map<String, dynamic> defaultSdpConstraints = {
     'mandatory': {
       'OfferToReceiveAudio': true,
@@ -101,6 +106,13 @@ class RTCPeerConnectionNative extends RTCPeerConnection {
             cand['candidate'], cand['sdpMid'], cand['sdpMLineIndex']);
         onIceCandidate?.call(candidate);
         break;
+      case 'onIceCandidates':
+        List<dynamic> candidates = map['candidates'];
+        for (var cand in candidates) {
+          onIceCandidate?.call(RTCIceCandidate(
+              cand['candidate'], cand['sdpMid'], cand['sdpMLineIndex']));
+        }
+        break;
       case 'onAddStream':
         String streamId = map['streamId'];
 
@@ -191,6 +203,11 @@ class RTCPeerConnectionNative extends RTCPeerConnection {
             transceiver: transceiver));
         break;
 
+      case 'onStatsSample':
+        onStatsSample?.call((map['timestamp'] as num).toDouble(),
+            List<Map<dynamic, dynamic>>.from(map['samples']));
+        break;
+
       /// Other
       case 'onSelectedCandidatePairChanged':
 
@@ -376,12 +393,50 @@ class RTCPeerConnectionNative extends RTCPeerConnection {
     });
   }
 
+  /// Adds several remote candidates with a single platform call.
+  /// Returns whether each candidate was applied, in the same order.
+  Future<List<bool>> addCandidates(List<RTCIceCandidate> candidates) async {
+    final response =
+        await _channel.invokeMethod<Map<dynamic, dynamic>>('addCandidates', {
+      'peerConnectionId': _peerConnectionId,
+      'candidates': candidates.map((c) => c.toMap()).toList(),
+    });
+    return List<bool>.from(response?['results'] ?? []);
+  }
+
+  /// Starts native stats sampling every [intervalMs], delivered through
+  /// [onStatsSample]. Rates are per second over the interval; [fields]
+  /// restricts the metrics to any of 'bitrate', 'packetLossRate', 'jitter',
+  /// 'framesDecodedPerSecond' and 'roundTripTime'.
+  Future<void> startStatsSampler(
+      {int intervalMs = 1000, List<String>? fields}) async {
+    await _channel.invokeMethod('startStatsSampler', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'intervalMs': intervalMs,
+      if (fields != null) 'fields': fields,
+    });
+  }
+
+  Future<void> stopStatsSampler() async {
+    await _channel.invokeMethod('stopStatsSampler',
+        <String, dynamic>{'peerConnectionId': _peerConnectionId});
+  }
+
   @override
-  Future<List<StatsReport>> getStats([MediaStreamTrack? track]) async {
+  Future<List<StatsReport>> getStats([MediaStreamTrack? track]) =>
+      getStatsWithSelector(track: track);
+
+  /// Standard stats, optionally restricted to [track]. When given, only
+  /// reports whose type is in [types] and whose id is in [ids] are returned;
+  /// filtering happens natively, so other reports are never serialized.
+  Future<List<StatsReport>> getStatsWithSelector(
+      {MediaStreamTrack? track, List<String>? types, List<String>? ids}) async {
     try {
       final response = await WebRTC.invokeMethod('getStats', <String, dynamic>{
         'peerConnectionId': _peerConnectionId,
-        'track': track != null ? track.id : null
+        'track': track != null ? track.id : null,
+        if (types != null) 'types': types,
+        if (ids != null) 'ids': ids,
       });
 
       var stats = <StatsReport>[];
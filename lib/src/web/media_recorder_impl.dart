@@ -19,6 +19,7 @@ class MediaRecorderWeb extends MediaRecorder {
     MediaStreamTrack? audioTrack,
     RecorderAudioChannel? audioChannel,
     int? rotation,
+    Map<String, dynamic>? options,
   }) {
     throw 'Use startWeb on Flutter Web!';
   }